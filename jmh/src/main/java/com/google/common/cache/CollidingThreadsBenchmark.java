@@ -0,0 +1,108 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.StripedAtomicLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedLockLongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shows what happens to {@link StripedAtomicLongAdder} and {@link StripedLockLongAdder} when thread ids collide on a
+ * stripe, before and after stripes were picked by a rehashable probe instead of the thread id.
+ * <p/>
+ * Thread ids cannot be chosen, so each benchmark thread is pinned a fake id of {@code idSpacing} times its index and
+ * {@link #threadIdStripes} repeats the old add of the {@code adder} with it. For StripedAtomic that is an
+ * {@code addAndGet} on stripe {@code id % 64}: with a spacing of 1 every thread has its own stripe, with 32 they
+ * collide in pairs, and with 64 they all share stripe 0. For StripedLock it is an add under the monitor of lock
+ * {@code id % 32}, so a spacing of 32 or 64 puts every thread on lock 0. {@link #probeStripes} is the current adder,
+ * which ignores thread ids, so it should run at the same rate whatever the spacing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CollidingThreadsBenchmark {
+
+    private static final int SIZE = 64;
+    private static final int LOCKS = 32;
+
+    @Param({"StripedAtomic", "StripedLock"})
+    public String adder;
+
+    @Param({"1", "32", "64"})
+    public int idSpacing;
+
+    private final AtomicLongArray threadIdAdders = new AtomicLongArray(SIZE);
+    private final StripedAtomicLongAdder probeAdder = new StripedAtomicLongAdder();
+
+    private final long[] threadIdLockAdders = new long[LOCKS];
+    private final Object[] threadIdLocks = new Object[LOCKS];
+    private final StripedLockLongAdder probeLockAdder = new StripedLockLongAdder();
+
+    private boolean locking;
+
+    public CollidingThreadsBenchmark() {
+        for (int i = 0; i < LOCKS; i++) threadIdLocks[i] = new Object();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("StripedAtomic".equals(adder)) {
+            locking = false;
+        } else if ("StripedLock".equals(adder)) {
+            locking = true;
+        } else {
+            throw new IllegalArgumentException("Unknown adder: " + adder);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PinnedId {
+        long tid;
+
+        @Setup(Level.Trial)
+        public void setUp(CollidingThreadsBenchmark bench, ThreadParams params) {
+            tid = (long) bench.idSpacing * params.getThreadIndex();
+        }
+    }
+
+    @Benchmark
+    public void threadIdStripes(PinnedId pinned) {
+        final long tid = pinned.tid;
+        if (locking) {
+            final int sid = (int) (tid ^ (tid >>> 32)) % LOCKS;
+            synchronized (threadIdLocks[sid]) {
+                threadIdLockAdders[sid] += 1;
+            }
+        } else {
+            final int sid = (int) (tid ^ (tid >>> 32)) % SIZE;
+            threadIdAdders.addAndGet(sid, 1);
+        }
+    }
+
+    @Benchmark
+    public void probeStripes() {
+        if (locking) {
+            probeLockAdder.add(1);
+        } else {
+            probeAdder.add(1);
+        }
+    }
+}
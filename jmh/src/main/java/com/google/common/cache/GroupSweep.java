@@ -0,0 +1,72 @@
+package com.google.common.cache;
+
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every {@code @Group} of a benchmark class over a sweep of thread counts. JMH rounds a thread count up to a whole
+ * number of groups, so each count is rounded up the same way per group, counts that round to one already run are
+ * skipped, and every run is labelled with the number of threads it really uses.
+ */
+final class GroupSweep {
+
+    private GroupSweep() {
+    }
+
+    /**
+     * Runs the sweep over the thread counts given as arguments, by default 1, 2, 4, 8, 16 and 32.
+     */
+    static void run(Class<?> benchmark, String[] args) throws RunnerException {
+        final int[] threads;
+        if (args.length == 0) {
+            threads = new int[]{1, 2, 4, 8, 16, 32};
+        } else {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                threads[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (Map.Entry<String, Integer> group : groups(benchmark).entrySet()) {
+            final int size = group.getValue();
+            final Set<Integer> done = new TreeSet<Integer>();
+            for (int thread : threads) {
+                final int actual = (thread + size - 1) / size * size;
+                if (!done.add(actual)) continue;
+
+                System.out.format("Group=%s  Threads=%d (%d per group)", group.getKey(), actual, size).println();
+                final Options opts = new OptionsBuilder()
+                        .include(Pattern.quote(benchmark.getName() + "." + group.getKey()) + "$")
+                        .threads(actual)
+                        .build();
+                new Runner(opts).run();
+            }
+        }
+    }
+
+    /**
+     * Returns the threads per group of each group, summing {@code @GroupThreads} over the group's methods.
+     */
+    private static Map<String, Integer> groups(Class<?> benchmark) {
+        final Map<String, Integer> groups = new TreeMap<String, Integer>();
+        for (Method m : benchmark.getMethods()) {
+            final Group group = m.getAnnotation(Group.class);
+            if (group == null) continue;
+            final GroupThreads threads = m.getAnnotation(GroupThreads.class);
+            final Integer sum = groups.get(group.value());
+            groups.put(group.value(), (sum == null ? 0 : sum) + (threads == null ? 1 : threads.value()));
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.common.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of a keyed {@link HotKeyStatsCounter#recordHit} against a plain
+ * {@link Striped64StatsCounter#recordHits}, with keys drawn from a skewed distribution.
+ * <p/>
+ * Each benchmark is a one thread {@code @Group} sharing a single counter, so {@code -t} sets how many threads contend on
+ * it. {@link #main} sweeps the thread counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class KeyedStatsCounterBenchmark {
+
+    private static final int KEYS = 4096;
+
+    private final Integer[] keys = new Integer[KEYS];
+
+    private final Striped64StatsCounter striped64 = new Striped64StatsCounter();
+    private final HotKeyStatsCounter hotKey = new HotKeyStatsCounter();
+
+    public KeyedStatsCounterBenchmark() {
+        final Random rnd = new Random(0xCAFEBABE);
+        for (int i = 0; i < KEYS; i++) {
+            // Squaring a uniform draw skews the keys towards zero.
+            final double u = rnd.nextDouble();
+            keys[i] = (int) (u * u * 100000);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int ptr;
+
+        Integer next(Integer[] keys) {
+            return keys[ptr++ & (KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Group("striped64Hits")
+    public void striped64Hits(Cursor cursor) {
+        cursor.next(keys);
+        striped64.recordHits(1);
+    }
+
+    @Benchmark
+    @Group("hotKeyHit")
+    public void hotKeyHit(Cursor cursor) {
+        hotKey.recordHit(cursor.next(keys));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        GroupSweep.run(KeyedStatsCounterBenchmark.class, args);
+    }
+}
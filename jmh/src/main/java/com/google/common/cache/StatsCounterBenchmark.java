@@ -0,0 +1,146 @@
+package com.google.common.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH replacement for the hand-rolled CacheStatsMicroBench runner. Every subject is measured in its own forked JVMs
+ * after warmup, and results are reported as ops/s with error bars.
+ * <p/>
+ * Each {@code @Group} is one scenario. Thread counts are parameterised with JMH's {@code -t} option, which is rounded
+ * up to a whole number of groups, or by running {@link #main} which sweeps them and reports the rounded counts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Group)
+public class StatsCounterBenchmark {
+
+    @Param({"Control", "Atomic", "StripedAtomic", "StripedLock", "Striped64", "StripedLocal", "Fused", "PaddedStripedAtomic", "BoundedStriped", "VarHandleStriped64", "JdkLongAdder", "Consistent", "Windowed", "LoadHistogram", "Buffered", "Sampling", "LoadTimeRange", "Mapped", "Slab"})
+    public StatsCounterSubject subject;
+
+    private StatsCounter counter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        counter = subject.create();
+    }
+
+    /*
+     * Scenario "hits": the read path of a warm cache, every thread records hits.
+     */
+
+    @Benchmark
+    @Group("hits")
+    @GroupThreads(1)
+    public void hits() {
+        counter.recordHits(1);
+    }
+
+    /*
+     * Scenario "mixed": each thread of the group plays a different role of a loading cache.
+     */
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedHits() {
+        counter.recordHits(1);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedMisses() {
+        counter.recordMisses(1);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedLoadSuccess() {
+        counter.recordLoadSuccess(1000);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedLoadException() {
+        counter.recordLoadException(1000);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedEviction() {
+        counter.recordEviction();
+    }
+
+    /*
+     * Scenario "snapshot": writers recording hits while one reader polls the counter.
+     */
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public void snapshotWriter() {
+        counter.recordHits(1);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public CacheStats snapshotReader() {
+        return counter.snapshot();
+    }
+
+    /*
+     * Scenario "snapshotInto": as "snapshot", but the reader fills a reused holder. Run with -prof gc to compare the
+     * allocation rate against "snapshot".
+     */
+
+    @State(Scope.Thread)
+    public static class Holder {
+        final MutableCacheStats stats = new MutableCacheStats();
+    }
+
+    @Benchmark
+    @Group("snapshotInto")
+    @GroupThreads(3)
+    public void snapshotIntoWriter() {
+        counter.recordHits(1);
+    }
+
+    @Benchmark
+    @Group("snapshotInto")
+    @GroupThreads(1)
+    public long snapshotIntoReader(Holder holder) {
+        counter.snapshotInto(holder.stats);
+        return holder.stats.hitCount();
+    }
+
+    /**
+     * Sweeps the thread counts given as arguments (default 1, 2, 4, 8, 16, 32) over every scenario and subject, each
+     * rounded up to a whole number of the scenario's groups, see {@link GroupSweep}.
+     */
+    public static void main(String[] args) throws RunnerException {
+        GroupSweep.run(StatsCounterBenchmark.class, args);
+    }
+}
@@ -0,0 +1,128 @@
+package com.google.common.cache;
+
+/**
+ * The {@link StatsCounter} implementations under test. Benchmarks take one of these as a {@code @Param} so that
+ * each forked JVM only ever loads a single implementation, keeping the {@code record*} call sites monomorphic.
+ */
+public enum StatsCounterSubject {
+    Control {
+        @Override
+        public StatsCounter create() {
+            return new ControlStatsCounter();
+        }
+    },
+    Atomic {
+        @Override
+        public StatsCounter create() {
+            return new AtomicStatsCounter();
+        }
+    },
+    StripedAtomic {
+        @Override
+        public StatsCounter create() {
+            return new StripedAtomicStatsCounter();
+        }
+    },
+    StripedLock {
+        @Override
+        public StatsCounter create() {
+            return new StripedLockStatsCounter();
+        }
+    },
+    Striped64 {
+        @Override
+        public StatsCounter create() {
+            return new Striped64StatsCounter();
+        }
+    },
+    StripedLocal {
+        @Override
+        public StatsCounter create() {
+            return new StripedLocalStatsCounter();
+        }
+    },
+    Fused {
+        @Override
+        public StatsCounter create() {
+            return new FusedStatsCounter();
+        }
+    },
+    PaddedStripedAtomic {
+        @Override
+        public StatsCounter create() {
+            return new PaddedStripedAtomicStatsCounter();
+        }
+    },
+    BoundedStriped {
+        @Override
+        public StatsCounter create() {
+            return new BoundedStripedStatsCounter();
+        }
+    },
+    VarHandleStriped64 {
+        @Override
+        public StatsCounter create() {
+            return new VarHandleStriped64StatsCounter();
+        }
+    },
+    JdkLongAdder {
+        @Override
+        public StatsCounter create() {
+            return new JdkLongAdderStatsCounter();
+        }
+    },
+    Consistent {
+        @Override
+        public StatsCounter create() {
+            return new ConsistentStatsCounter();
+        }
+    },
+    Windowed {
+        @Override
+        public StatsCounter create() {
+            return new WindowedStatsCounter();
+        }
+    },
+    LoadHistogram {
+        @Override
+        public StatsCounter create() {
+            return new LoadHistogramStatsCounter();
+        }
+    },
+    Buffered {
+        @Override
+        public StatsCounter create() {
+            return new BufferedStatsCounter();
+        }
+    },
+    Sampling {
+        @Override
+        public StatsCounter create() {
+            return new SamplingStatsCounter();
+        }
+    },
+    LoadTimeRange {
+        @Override
+        public StatsCounter create() {
+            return new LoadTimeRangeStatsCounter();
+        }
+    },
+    /**
+     * Every instance creates, maps and deletes a temporary file, so creating one costs file system calls and each
+     * instance holds its own mapping. LoadingCacheBenchmark with {@code sharing} "segment" creates one per segment.
+     */
+    Mapped {
+        @Override
+        public StatsCounter create() {
+            return new MappedStatsCounter();
+        }
+    },
+    Slab {
+        @Override
+        public StatsCounter create() {
+            return new SlabStatsCounterRegistry(1).counter("bench");
+        }
+    };
+
+    public abstract StatsCounter create();
+}
@@ -1,104 +1,749 @@
 import com.google.common.cache.*;
+import com.hyperscalelogic.util.concurrent.StripedLocalLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedLogHistogram;
+import com.sun.management.HotSpotDiagnosticMXBean;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 public class CacheStatsMicroBench {
 
+    private static final int ITERATIONS = 100000;
+
     private static final int[] samples = new int[256];
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length > 0 && args[0].equals("export")) {
+            runExport(args.length > 1 ? Integer.parseInt(args[1]) : 1000, 100);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("churn")) {
+            runChurn(1000, 16);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("stress")) {
+            AdderStress.run(args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+            final int recorders = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+            System.out.format("Stress Recorders=%d  Mergers=%d", recorders, 2).println();
+            runSubjects(new Stress(), recorders, null, ITERATIONS / 10);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("staleness")) {
+            runStaleness(4, 10000000);
+            return;
+        }
+
+        if (args.length == 1 && args[0].equals("report")) {
+            System.out.println("Usage: CacheStatsMicroBench report <name> [baseline.csv] [tolerance%]");
+            return;
+        }
+
         final Random rnd = new Random(0xCAFEBABE);
         for (int i = 0; i < 256; i++) {
             samples[i] = rnd.nextInt(2048);
         }
 
-        int[] threads = {1, 2, 4, 8, 16};
+        final Workload workload;
+        int readers = 0;
+        long readerIntervalNanos = 0;
+        if (args.length > 1 && args[0].equals("workload")) {
+            workload = Workload.parse(args[1]);
+            System.out.format("Workload=%s", workload).println();
+        } else if (args.length > 0 && args[0].equals("readers")) {
+            // Writers only write, so any snapshot() cost is the readers'.
+            readers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+            readerIntervalNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 1000);
+            workload = Workload.parse(args.length > 3 ? args[3] : "");
+            System.out.format("Readers=%d  Interval=%dus  Workload=%s", readers, TimeUnit.NANOSECONDS.toMicros(readerIntervalNanos), workload).println();
+        } else {
+            workload = Workload.legacy(samples);
+        }
+
+        if (args.length > 0 && args[0].equals("virtual")) {
+            final int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+            final ExecutorService exec = newVirtualThreadPerTaskExecutor();
+            if (exec == null) {
+                System.out.println("Virtual threads are not supported by this JVM");
+                return;
+            }
+
+            System.out.format("VirtualThreads Tasks=%d", tasks).println();
+            runSubjects(new Timed(workload, 0, 0, null), tasks, exec, Math.max(1, ITERATIONS * 16 / tasks));
+
+            exec.shutdown();
+            exec.awaitTermination(1, TimeUnit.HOURS);
+            return;
+        }
+
+        final boolean sampling = args.length > 0 && args[0].equals("sampling");
+        final int rate = sampling && args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        final int[] threads = doublingTo(2 * Runtime.getRuntime().availableProcessors());
+        final Report report = args.length > 1 && args[0].equals("report") ? new Report() : null;
+        final boolean footprint = args.length > 0 && args[0].equals("footprint");
+        final Mode mode = footprint ? new Footprint(workload) : new Timed(workload, readers, readerIntervalNanos, report);
+        if (footprint) {
+            final HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (hotspot != null && !hotspot.getVMOption("MarkSweepDeadRatio").getValue().equals("0")) {
+                // Full collections otherwise leave dead objects in place in mostly live regions, still counted as used.
+                System.out.println("Run with -XX:MarkSweepDeadRatio=0 for exact footprints");
+            }
+            // Load and run the measuring path once, so that the first measurement does not count it.
+            final ControlStatsCounter warmup = new ControlStatsCounter();
+            mode.test("Warmup", 1, null, warmup, warmup, ITERATIONS);
+            mode.test("Warmup", 1, null, new Striped64StatsCounter(), warmup, ITERATIONS);
+        }
         for (int j = 0; j < threads.length; j++) {
             final int thread = threads[j];
-            final ExecutorService exec = Executors.newFixedThreadPool(thread);
+            // Footprint runs each subject on a pool of its own.
+            final ExecutorService exec = footprint ? null : Executors.newFixedThreadPool(thread);
 
             System.out.format("Threads=%d", thread).println();
+            if (sampling) {
+                ControlStatsCounter control = new ControlStatsCounter();
+                mode.test("Control", thread, exec, control, control, ITERATIONS);
+                mode.test("Striped64", thread, exec, new Striped64StatsCounter(), control, ITERATIONS);
+                runSampling("Sampling", thread, exec, workload, new SamplingStatsCounter(rate), control, ITERATIONS);
+            } else {
+                runSubjects(mode, thread, exec, ITERATIONS);
+            }
+
+            if (exec != null) {
+                exec.shutdown();
+                exec.awaitTermination(1, TimeUnit.HOURS);
+            }
+        }
 
-            ControlStatsCounter control = new ControlStatsCounter();
-            runTest("Control", thread, exec, control, control);
+        if (report != null) {
+            report.writeCsv(new File(args[1] + ".csv"));
+            report.writeJson(new File(args[1] + ".json"));
+            if (args.length > 2) {
+                final double tolerance = (args.length > 3 ? Double.parseDouble(args[3]) : 10) / 100;
+                final List<String> regressions = report.regressions(Report.readCsv(new File(args[2])), tolerance);
+                for (String regression : regressions) {
+                    System.out.println("REGRESSION " + regression);
+                }
+                if (!regressions.isEmpty()) System.exit(1);
+            }
+        }
+    }
 
-            runTest("Atomic1", thread, exec, new AtomicStatsCounter(), control);
-            runTest("StripedAtomic1", thread, exec, new StripedAtomicStatsCounter(), control);
-            runTest("StripedLock1", thread, exec, new StripedLockStatsCounter(), control);
-            runTest("Striped641", thread, exec, new Striped64StatsCounter(), control);
-            runTest("StripedLocal1", thread, exec, new StripedLocalStatsCounter(), control);
+    private static void runSubjects(Mode mode, int thread, ExecutorService exec, int iterations) throws InterruptedException {
+        ControlStatsCounter control = new ControlStatsCounter();
+        mode.test("Control", thread, exec, control, control, iterations);
 
-            runTest("Atomic2", thread, exec, new AtomicStatsCounter(), control);
-            runTest("StripedAtomic2", thread, exec, new StripedAtomicStatsCounter(), control);
-            runTest("StripedLock2", thread, exec, new StripedLockStatsCounter(), control);
-            runTest("Striped642", thread, exec, new Striped64StatsCounter(), control);
-            runTest("StripedLocal2", thread, exec, new StripedLocalStatsCounter(), control);
+        mode.test("Atomic1", thread, exec, new AtomicStatsCounter(), control, iterations);
+        mode.test("StripedAtomic1", thread, exec, new StripedAtomicStatsCounter(), control, iterations);
+        mode.test("StripedLock1", thread, exec, new StripedLockStatsCounter(), control, iterations);
+        mode.test("Striped641", thread, exec, new Striped64StatsCounter(), control, iterations);
+        mode.test("StripedLocal1", thread, exec, new StripedLocalStatsCounter(), control, iterations);
+        mode.test("Fused1", thread, exec, new FusedStatsCounter(), control, iterations);
+        mode.test("PaddedStripedAtomic1", thread, exec, new PaddedStripedAtomicStatsCounter(), control, iterations);
+        mode.test("BoundedStriped1", thread, exec, new BoundedStripedStatsCounter(), control, iterations);
+        mode.test("VarHandleStriped641", thread, exec, new VarHandleStriped64StatsCounter(), control, iterations);
+        mode.test("JdkLongAdder1", thread, exec, new JdkLongAdderStatsCounter(), control, iterations);
+        mode.test("Consistent1", thread, exec, new ConsistentStatsCounter(), control, iterations);
+        mode.test("Windowed1", thread, exec, new WindowedStatsCounter(), control, iterations);
+        mode.test("LoadHistogram1", thread, exec, new LoadHistogramStatsCounter(), control, iterations);
+        mode.test("Buffered1", thread, exec, new BufferedStatsCounter(), control, iterations);
+        mode.test("LoadTimeRange1", thread, exec, new LoadTimeRangeStatsCounter(), control, iterations);
+        mode.test("Mapped1", thread, exec, new MappedStatsCounter(), control, iterations);
+        mode.test("Slab1", thread, exec, new SlabStatsCounterRegistry(1).counter("bench"), control, iterations);
 
-            exec.shutdown();
-            exec.awaitTermination(1, TimeUnit.HOURS);
+        mode.test("Atomic2", thread, exec, new AtomicStatsCounter(), control, iterations);
+        mode.test("StripedAtomic2", thread, exec, new StripedAtomicStatsCounter(), control, iterations);
+        mode.test("StripedLock2", thread, exec, new StripedLockStatsCounter(), control, iterations);
+        mode.test("Striped642", thread, exec, new Striped64StatsCounter(), control, iterations);
+        mode.test("StripedLocal2", thread, exec, new StripedLocalStatsCounter(), control, iterations);
+        mode.test("Fused2", thread, exec, new FusedStatsCounter(), control, iterations);
+        mode.test("PaddedStripedAtomic2", thread, exec, new PaddedStripedAtomicStatsCounter(), control, iterations);
+        mode.test("BoundedStriped2", thread, exec, new BoundedStripedStatsCounter(), control, iterations);
+        mode.test("VarHandleStriped642", thread, exec, new VarHandleStriped64StatsCounter(), control, iterations);
+        mode.test("JdkLongAdder2", thread, exec, new JdkLongAdderStatsCounter(), control, iterations);
+        mode.test("Consistent2", thread, exec, new ConsistentStatsCounter(), control, iterations);
+        mode.test("Windowed2", thread, exec, new WindowedStatsCounter(), control, iterations);
+        mode.test("LoadHistogram2", thread, exec, new LoadHistogramStatsCounter(), control, iterations);
+        mode.test("Buffered2", thread, exec, new BufferedStatsCounter(), control, iterations);
+        mode.test("LoadTimeRange2", thread, exec, new LoadTimeRangeStatsCounter(), control, iterations);
+        mode.test("Mapped2", thread, exec, new MappedStatsCounter(), control, iterations);
+        mode.test("Slab2", thread, exec, new SlabStatsCounterRegistry(1).counter("bench"), control, iterations);
+    }
+
+    /**
+     * Returns Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively so the bench still builds and runs on
+     * JVMs without virtual threads, or null when it is not available.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * What is done with each subject of a run: timing it, measuring the heap it retains, or stressing it.
+     */
+    private static abstract class Mode {
+        abstract void test(Object desc, int thread, ExecutorService exec, StatsCounter subject, ControlStatsCounter control, int iterations) throws InterruptedException;
+    }
+
+    /**
+     * Times the subject running the workload, optionally records the result in a report, and with readers times it
+     * again while reader threads snapshot it.
+     */
+    private static final class Timed extends Mode {
+        private final Workload workload;
+        private final int readers;
+        private final long readerIntervalNanos;
+        private final Report report;
+
+        Timed(Workload workload, int readers, long readerIntervalNanos, Report report) {
+            this.workload = workload;
+            this.readers = readers;
+            this.readerIntervalNanos = readerIntervalNanos;
+            this.report = report;
+        }
+
+        @Override
+        void test(Object desc, int thread, ExecutorService exec, StatsCounter subject, ControlStatsCounter control, int iterations) throws InterruptedException {
+            final double duration = execute(thread, exec, workload, subject, iterations);
+            if (report != null) report.add(desc, thread, duration, (long) thread * iterations * workload.opsPerIteration);
+            if (readers > 0) {
+                final StripedLogHistogram latencies = new StripedLogHistogram();
+                final double contended = executeWithReaders(thread, exec, workload, subject, iterations, readers, readerIntervalNanos, latencies);
+                final StripedLogHistogram.Snapshot l = latencies.snapshot();
+                System.out.format("  %-20s  Duration=%.4fs  WithReaders=%.4fs (%+.1f%%)  Snapshots=%d  p50=%dns  p99=%dns  p999=%dns  max=%dns",
+                        desc, duration, contended, 100.0 * (contended - duration) / duration,
+                        l.count(), l.percentile(50), l.percentile(99), l.percentile(99.9), l.max()).println();
+            } else {
+                System.out.format("  %-20s  Duration=%.4fs", desc, duration).println();
+            }
+            control.verify(subject);
+        }
+    }
+
+    /**
+     * Runs the subject on a pool of its own and, once the pool's threads have exited, measures the heap the subject
+     * retains as the drop in live heap when it is released. Thread-local map entries die with their threads, so what is
+     * counted is the state reachable from the counter itself, including any stripes it keeps for threads that are gone.
+     * Only the Java heap is measured, so memory a subject keeps off heap, like the mapped file of a MappedStatsCounter,
+     * is flagged in the output rather than counted. The control is never released and so is not measured.
+     */
+    private static final class Footprint extends Mode {
+        private final Workload workload;
+        private StatsCounter measured;
+
+        Footprint(Workload workload) {
+            this.workload = workload;
+        }
+
+        @Override
+        void test(Object desc, int thread, ExecutorService exec, StatsCounter subject, ControlStatsCounter control, int iterations) throws InterruptedException {
+            // Leave measured as the only reference, so that the subject can be released and its size measured.
+            measured = subject;
+            subject = null;
+            run(desc, thread, control, iterations);
+        }
+
+        private void run(Object desc, int thread, ControlStatsCounter control, int iterations) throws InterruptedException {
+            final List<Thread> workers = new ArrayList<Thread>();
+            final ExecutorService pool = Executors.newFixedThreadPool(thread, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread t = new Thread(r);
+                    workers.add(t);
+                    return t;
+                }
+            });
+
+            final double duration = execute(thread, pool, workload, measured, iterations);
+            control.verify(measured);
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+            for (Thread t : workers) {
+                t.join();
+            }
+
+            final double throughput = (double) thread * iterations * workload.opsPerIteration / duration / 1e6;
+            if (measured == control) {
+                measured = null;
+                System.out.format("  %-20s  Duration=%.4fs  Throughput=%.1fMops/s", desc, duration, throughput).println();
+            } else {
+                final String offHeap = measured instanceof MappedStatsCounter ? "  (heap only, cells are off heap)" : "";
+                final long retained = usedHeap();
+                measured = null;
+                final long bytes = retained - usedHeap();
+                System.out.format("  %-20s  Duration=%.4fs  Throughput=%.1fMops/s  Bytes=%d%s", desc, duration, throughput, bytes, offHeap).println();
+            }
+        }
+    }
+
+    /**
+     * Races recorders, mergers, a snapshotting thread and a draining thread against the subject, see runStress.
+     */
+    private static final class Stress extends Mode {
+        @Override
+        void test(Object desc, int thread, ExecutorService exec, StatsCounter subject, ControlStatsCounter control, int iterations) throws InterruptedException {
+            runStress(desc, thread, subject, iterations);
+        }
+    }
+
+    /**
+     * Returns the live heap after collecting garbage, collecting until it settles so that references cleared by one
+     * collection have been processed and their referents reclaimed by the next.
+     */
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+            final long now = memory.getHeapMemoryUsage().getUsed();
+            if (now == used) break;
+            used = now;
+        }
+        return used;
+    }
+
+    private static int[] doublingTo(int max) {
+        int n = 1;
+        while ((1 << (n - 1)) < max) n++;
+        final int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            counts[i] = Math.min(1 << i, max);
+        }
+        return counts;
+    }
+
+    /**
+     * Runs the writers as execute() does while dedicated reader threads call snapshot(), pausing readerIntervalNanos
+     * between calls, and records each snapshot's latency.
+     */
+    private static double executeWithReaders(int thread, ExecutorService exec, Workload workload, final StatsCounter subject, int iterations,
+                                             int readers, final long readerIntervalNanos, final StripedLogHistogram latencies) throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread[] threads = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        final long start = System.nanoTime();
+                        subject.snapshot();
+                        latencies.record(System.nanoTime() - start);
+                        if (readerIntervalNanos > 0) LockSupport.parkNanos(readerIntervalNanos);
+                    }
+                }
+            });
+            threads[i].start();
         }
+
+        final double duration = execute(thread, exec, workload, subject, iterations);
+
+        running.set(false);
+        for (int i = 0; i < readers; i++) {
+            threads[i].join();
+        }
+        return duration;
     }
 
-    private static void runTest(Object desc, int thread, ExecutorService exec, StatsCounter subject, ControlStatsCounter control) throws InterruptedException {
+    /**
+     * Like Timed.test, but for a SamplingStatsCounter whose hits and misses are estimates: reports their error against
+     * the control and whether the control falls within the estimate's confidence interval.
+     */
+    private static void runSampling(Object desc, int thread, ExecutorService exec, Workload workload, SamplingStatsCounter subject, ControlStatsCounter control, int iterations) throws InterruptedException {
+        final double duration = execute(thread, exec, workload, subject, iterations);
+        final CacheStats expected = control.snapshot();
+        final SamplingStatsCounter.Estimate hits = subject.hitCountEstimate();
+        final SamplingStatsCounter.Estimate misses = subject.missCountEstimate();
+        System.out.format("  %-20s  Duration=%.4fs  HitError=%+.4f%% (%s)  MissError=%+.4f%% (%s)", desc, duration,
+                100.0 * (hits.value() - expected.hitCount()) / expected.hitCount(), hits.contains(expected.hitCount()) ? "in CI" : "outside CI",
+                100.0 * (misses.value() - expected.missCount()) / expected.missCount(), misses.contains(expected.missCount()) ? "in CI" : "outside CI").println();
+
+        final CacheStats actual = subject.snapshot();
+        if (expected.loadSuccessCount() != actual.loadSuccessCount()) throw new IllegalStateException("Validation failed!");
+        if (expected.loadExceptionCount() != actual.loadExceptionCount()) throw new IllegalStateException("Validation failed!");
+        if (expected.totalLoadTime() != actual.totalLoadTime()) throw new IllegalStateException("Validation failed!");
+        if (expected.evictionCount() != actual.evictionCount()) throw new IllegalStateException("Validation failed!");
+    }
+
+    private static double execute(int thread, ExecutorService exec, Workload workload, StatsCounter subject, int iterations) throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(thread);
         final long start = System.currentTimeMillis();
         for (int i = 0; i < thread; i++) {
-            exec.execute(new BenchRunner(latch, subject));
+            // Tasks start at different points of the workload, the same points for every subject.
+            exec.execute(new BenchRunner(latch, workload, subject, iterations, i * 7919));
         }
         latch.await();
         final long end = System.currentTimeMillis();
-        System.out.format("  %-15s  Duration=%.4fs", desc, (end - start) / 1000.0).println();
-        control.verify(subject);
+        return (end - start) / 1000.0;
     }
 
-    private static class BenchRunner implements Runnable {
+    /**
+     * Runs batches of short-lived threads against one StripedLocalLongAdder and checks that the stripes of terminated
+     * threads are reclaimed without losing their counts.
+     */
+    private static void runChurn(int batches, int batchSize) throws InterruptedException {
+        final StripedLocalLongAdder adder = new StripedLocalLongAdder();
+        for (int j = 0; j < batches; j++) {
+            final Thread[] workers = new Thread[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        adder.add(1);
+                    }
+                });
+                workers[i].start();
+            }
+            for (int i = 0; i < batchSize; i++) {
+                workers[i].join();
+            }
+        }
 
+        final long sum = adder.sum();
+        final int stripes = adder.stripes();
+        System.out.format("Churn Threads=%d  Stripes=%d  Sum=%d", batches * batchSize, stripes, sum).println();
+        if (sum != (long) batches * batchSize) throw new IllegalStateException("Validation failed!");
+        if (stripes > batchSize) throw new IllegalStateException("Validation failed!");
+    }
 
-        private final CountDownLatch latch;
-        private final StatsCounter subject;
+    /**
+     * Measures how far BufferedStatsCounter snapshots lag behind the calls actually made while writers are running,
+     * and checks the lag against the documented bound of flushOps calls per writer.
+     */
+    private static void runStaleness(final int writers, final int ops) throws InterruptedException {
+        final BufferedStatsCounter subject = new BufferedStatsCounter();
+        final AtomicLongArray made = new AtomicLongArray(writers);
+        final Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 1; j <= ops; j++) {
+                        subject.recordHits(1);
+                        made.lazySet(id, j);
+                    }
+                }
+            });
+            threads[i].start();
+        }
 
-        public BenchRunner(CountDownLatch latch, StatsCounter subject) {
-            this.latch = latch;
-            this.subject = subject;
+        long maxLag = 0;
+        long snapshots = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (int i = 0; i < writers; i++) running |= threads[i].isAlive();
+
+            long expected = 0;
+            for (int i = 0; i < writers; i++) expected += made.get(i);
+            final long lag = expected - subject.snapshot().hitCount();
+            maxLag = Math.max(maxLag, lag);
+            snapshots++;
         }
 
-        @Override
-        public void run() {
-            int ptr = 0;
+        final long bound = (long) writers * subject.flushOps();
+        System.out.format("Staleness Writers=%d  Snapshots=%d  MaxLag=%d  Bound=%d", writers, snapshots, maxLag, bound).println();
+        if (maxLag > bound) throw new IllegalStateException("Validation failed!");
+        if (subject.snapshot().hitCount() != (long) writers * ops) throw new IllegalStateException("Validation failed!");
+    }
+
+    /**
+     * Runs recorder threads against the subject while two more threads merge another counter into it through its
+     * incrementBy, and the calling thread snapshots it throughout. Each recording iteration and each merge adds the
+     * same counts, so every snapshot must lie between the previous one and the exact final counts. A quiescent drain
+     * must then return exactly those counts and leave zero, and a second race with one more thread draining
+     * throughout must have its drains and a final drain add up to the exact counts again.
+     */
+    private static void runStress(Object desc, int recorders, StatsCounter subject, int iterations) throws InterruptedException {
+        final Striped64StatsCounter source = new Striped64StatsCounter();
+        record(source);
+        final Method incrementBy;
+        try {
+            incrementBy = subject.getClass().getMethod("incrementBy", StatsCounter.class);
+            incrementBy.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final int mergers = 2;
+        final int merges = iterations / 10;
+        final long n = (long) recorders * iterations + (long) mergers * merges;
+        final long[] expected = {n, 2 * n, n, n, 7 * n, n};
+
+        final long snapshots = race(desc, recorders, mergers, subject, iterations, merges, source, incrementBy, expected, null);
+        final long[] actual = fields(subject.snapshot());
+        final long[] drainedAll = fields(subject.drain());
+        final long[] remaining = fields(subject.snapshot());
+        if (!Arrays.equals(actual, expected) || !Arrays.equals(drainedAll, expected) || !Arrays.equals(remaining, new long[6])) {
+            System.out.format("  %-20s  FAILED: final %s, drained %s leaving %s, expected %s", desc, Arrays.toString(actual),
+                    Arrays.toString(drainedAll), Arrays.toString(remaining), Arrays.toString(expected)).println();
+            throw new IllegalStateException("Validation failed!");
+        }
 
-            for (int j = 0; j < 100000; j++) {
+        final long[] drained = new long[6];
+        final long drains = race(desc, recorders, mergers, subject, iterations, merges, source, incrementBy, expected, drained);
+        final long[] last = fields(subject.drain());
+        for (int i = 0; i < 6; i++) drained[i] += last[i];
+        System.out.format("  %-20s  Snapshots=%d  Drains=%d  Final=%s", desc, snapshots, drains, Arrays.toString(drained)).println();
+        if (!Arrays.equals(drained, expected)) throw new IllegalStateException("Validation failed!");
+    }
 
-                for (int i = 0; i < 100; i++) {
-                    subject.recordHits(samples[ptr % 256]);
-                    ptr += 1;
+    /**
+     * Races the recorders and mergers of runStress while snapshotting on the calling thread. Given a drained array,
+     * one more thread drains the subject throughout, adding what it drains to the array, and returns the number of
+     * drains; snapshots may then go backwards but must stay within zero and the expected counts. Otherwise returns
+     * the number of snapshots.
+     */
+    private static long race(Object desc, int recorders, int mergers, final StatsCounter subject, final int iterations, final int merges,
+                             final StatsCounter source, final Method incrementBy, long[] expected, final long[] drained) throws InterruptedException {
+        final Thread[] threads = new Thread[recorders + mergers];
+        for (int i = 0; i < recorders; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < iterations; j++) {
+                        record(subject);
+                    }
+                    if (subject instanceof BufferedStatsCounter) {
+                        ((BufferedStatsCounter) subject).flush();
+                    }
+                }
+            });
+        }
+        for (int i = recorders; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < merges; j++) {
+                            incrementBy.invoke(subject, source);
+                        }
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
                 }
+            });
+        }
 
-                for (int i = 0; i < 100; i++) {
-                    subject.recordMisses(ptr % 256);
-                    ptr += 1;
+        final AtomicBoolean draining = new AtomicBoolean(true);
+        final long[] drains = new long[1];
+        final Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final MutableCacheStats stats = new MutableCacheStats();
+                while (draining.get()) {
+                    subject.drainInto(stats);
+                    drained[0] += stats.hitCount();
+                    drained[1] += stats.missCount();
+                    drained[2] += stats.loadSuccessCount();
+                    drained[3] += stats.loadExceptionCount();
+                    drained[4] += stats.totalLoadTime();
+                    drained[5] += stats.evictionCount();
+                    drains[0]++;
                 }
+            }
+        });
+        for (Thread t : threads) {
+            t.start();
+        }
+        if (drained != null) drainer.start();
+
+        long[] last = new long[6];
+        long snapshots = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread t : threads) running |= t.isAlive();
 
-                for (int i = 0; i < 100; i++) {
-                    subject.recordLoadException(ptr % 256);
-                    ptr += 1;
+            final long[] now = fields(subject.snapshot());
+            for (int i = 0; i < 6; i++) {
+                if ((drained == null && now[i] < last[i]) || now[i] < 0 || now[i] > expected[i]) {
+                    System.out.format("  %-20s  FAILED: snapshot %s after %s, final %s", desc,
+                            Arrays.toString(now), Arrays.toString(last), Arrays.toString(expected)).println();
+                    throw new IllegalStateException("Validation failed!");
                 }
+            }
+            last = now;
+            snapshots++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (drained == null) return snapshots;
+
+        draining.set(false);
+        drainer.join();
+        return drains[0];
+    }
+
+    /** Records one of each call, adding 1, 2, 1, 1, 7 and 1 to the counts in CacheStats order. */
+    private static void record(StatsCounter counter) {
+        counter.recordHits(1);
+        counter.recordMisses(2);
+        counter.recordLoadSuccess(3);
+        counter.recordLoadException(4);
+        counter.recordEviction();
+    }
+
+    private static long[] fields(CacheStats stats) {
+        return new long[]{stats.hitCount(), stats.missCount(), stats.loadSuccessCount(),
+                stats.loadExceptionCount(), stats.totalLoadTime(), stats.evictionCount()};
+    }
+
+    /**
+     * Registers caches counters with a StatsExporter, scrapes it over HTTP from this process and checks every sample
+     * against the counters, then times scrapes and measures what formatting one allocates.
+     */
+    private static void runExport(int caches, int scrapes) throws IOException {
+        final StatsExporter exporter = new StatsExporter();
+        final Map<String, Double> expected = new HashMap<String, Double>();
+        for (int i = 0; i < caches; i++) {
+            final Striped64StatsCounter counter = new Striped64StatsCounter();
+            counter.recordHits(i);
+            counter.recordMisses(2 * i);
+            counter.recordLoadSuccess(3000003L * i);
+            counter.recordLoadException(4000000L * i);
+            for (int j = 0; j < i % 7; j++) counter.recordEviction();
+            exporter.register("cache-" + i, counter);
+
+            final CacheStats stats = counter.snapshot();
+            expected.put("guava_cache_hits_total{cache=\"cache-" + i + "\"}", (double) stats.hitCount());
+            expected.put("guava_cache_misses_total{cache=\"cache-" + i + "\"}", (double) stats.missCount());
+            expected.put("guava_cache_load_success_total{cache=\"cache-" + i + "\"}", (double) stats.loadSuccessCount());
+            expected.put("guava_cache_load_exception_total{cache=\"cache-" + i + "\"}", (double) stats.loadExceptionCount());
+            expected.put("guava_cache_load_duration_seconds_total{cache=\"cache-" + i + "\"}", stats.totalLoadTime() / 1e9);
+            expected.put("guava_cache_evictions_total{cache=\"cache-" + i + "\"}", (double) stats.evictionCount());
+        }
+
+        final int port = exporter.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            final URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, StatsExporter.PATH);
+            final String body = new String(scrape(url), StandardCharsets.UTF_8);
+            int samples = 0;
+            for (String line : body.split("\n")) {
+                if (line.startsWith("#")) continue;
+                final int space = line.lastIndexOf(' ');
+                final Double value = expected.get(line.substring(0, space));
+                if (value == null || value != Double.parseDouble(line.substring(space + 1))) throw new IllegalStateException("Validation failed!");
+                samples++;
+            }
+            if (samples != expected.size()) throw new IllegalStateException("Validation failed!");
+
+            final long start = System.nanoTime();
+            long bytes = 0;
+            for (int i = 0; i < scrapes; i++) {
+                bytes += scrape(url).length;
+            }
+            final double duration = (System.nanoTime() - start) / 1e9;
 
-                for (int i = 0; i < 100; i++) {
-                    subject.recordLoadSuccess(ptr % 256);
-                    ptr += 1;
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final OutputStream sink = new OutputStream() {
+                @Override
+                public void write(int b) {
                 }
 
-                for (int i = 0; i < 100; i++) {
-                    subject.recordEviction();
+                @Override
+                public void write(byte[] b, int off, int len) {
                 }
+            };
+            exporter.writeTo(sink);
+            long allocated = -1;
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                final com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+                final long before = t.getThreadAllocatedBytes(Thread.currentThread().getId());
+                for (int i = 0; i < scrapes; i++) {
+                    exporter.writeTo(sink);
+                }
+                allocated = (t.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / scrapes;
+            }
+
+            System.out.format("Export Caches=%d  Samples=%d  Bytes=%d  Scrape=%.3fms  AllocatedPerFormat=%dB",
+                    caches, samples, bytes / scrapes, 1000 * duration / scrapes, allocated).println();
+        } finally {
+            exporter.stop();
+        }
+    }
+
+    private static byte[] scrape(URL url) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        try {
+            if (conn.getResponseCode() != 200) throw new IllegalStateException("Validation failed!");
+            final InputStream in = conn.getInputStream();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] chunk = new byte[8192];
+            for (int n; (n = in.read(chunk)) > 0; ) out.write(chunk, 0, n);
+            in.close();
+            return out.toByteArray();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static class BenchRunner implements Runnable {
+
+
+        private final CountDownLatch latch;
+        private final Workload workload;
+        private final StatsCounter subject;
+        private final int iterations;
+        private final int offset;
+
+        public BenchRunner(CountDownLatch latch, Workload workload, StatsCounter subject, int iterations, int offset) {
+            this.latch = latch;
+            this.workload = workload;
+            this.subject = subject;
+            this.iterations = iterations;
+            this.offset = offset;
+        }
 
-                subject.snapshot();
+        @Override
+        public void run() {
+            final Workload w = workload;
+            final int n = w.ops.length;
+            int ptr = offset % n;
+
+            for (long j = (long) iterations * w.opsPerIteration; j > 0; j--) {
+                w.apply(subject, ptr);
+                if (++ptr == n) ptr = 0;
             }
 
+            if (subject instanceof BufferedStatsCounter) {
+                // Publish this thread's remainder before the pool thread goes idle.
+                ((BufferedStatsCounter) subject).flush();
+            }
             latch.countDown();
         }
     }
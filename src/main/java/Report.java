@@ -0,0 +1,147 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the throughput of every subject at every thread count of a run, writes it out as CSV or JSON with the
+ * speedup and parallel efficiency of each point, and compares it against a baseline run read back from CSV.
+ * <p/>
+ * Speedup is relative to the subject's run at the fewest threads, normally 1, and efficiency is the speedup divided by
+ * the increase in threads, so 1.0 is perfect scaling.
+ */
+final class Report {
+
+    private static final String HEADER = "subject,threads,seconds,mops,speedup,efficiency";
+
+    /**
+     * Subject to thread count to result, in the order the subjects were first run.
+     */
+    private final Map<String, TreeMap<Integer, Result>> results = new LinkedHashMap<String, TreeMap<Integer, Result>>();
+
+    void add(Object subject, int threads, double seconds, long ops) {
+        add(subject.toString(), threads, seconds, ops / seconds / 1e6);
+    }
+
+    private void add(String subject, int threads, double seconds, double mops) {
+        TreeMap<Integer, Result> bySubject = results.get(subject);
+        if (bySubject == null) {
+            bySubject = new TreeMap<Integer, Result>();
+            results.put(subject, bySubject);
+        }
+        bySubject.put(threads, new Result(seconds, mops));
+    }
+
+    double speedup(String subject, int threads) {
+        final TreeMap<Integer, Result> bySubject = results.get(subject);
+        return bySubject.get(threads).mops / bySubject.firstEntry().getValue().mops;
+    }
+
+    double efficiency(String subject, int threads) {
+        final int fewest = results.get(subject).firstKey();
+        return speedup(subject, threads) * fewest / threads;
+    }
+
+    void writeCsv(File file) throws IOException {
+        final PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println(HEADER);
+            for (Map.Entry<String, TreeMap<Integer, Result>> s : results.entrySet()) {
+                for (Map.Entry<Integer, Result> t : s.getValue().entrySet()) {
+                    out.println(String.format(Locale.ROOT, "%s,%d,%.4f,%.3f,%.3f,%.3f", s.getKey(), t.getKey(),
+                            t.getValue().seconds, t.getValue().mops, speedup(s.getKey(), t.getKey()), efficiency(s.getKey(), t.getKey())));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    void writeJson(File file) throws IOException {
+        final PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("{");
+            out.println(String.format(Locale.ROOT, "  \"processors\": %d,", Runtime.getRuntime().availableProcessors()));
+            out.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+            out.println("  \"os\": \"" + System.getProperty("os.name") + " " + System.getProperty("os.arch") + "\",");
+            out.println("  \"results\": [");
+            boolean first = true;
+            for (Map.Entry<String, TreeMap<Integer, Result>> s : results.entrySet()) {
+                for (Map.Entry<Integer, Result> t : s.getValue().entrySet()) {
+                    if (!first) out.println(",");
+                    first = false;
+                    out.print(String.format(Locale.ROOT,
+                            "    {\"subject\": \"%s\", \"threads\": %d, \"seconds\": %.4f, \"mops\": %.3f, \"speedup\": %.3f, \"efficiency\": %.3f}",
+                            s.getKey(), t.getKey(), t.getValue().seconds, t.getValue().mops, speedup(s.getKey(), t.getKey()), efficiency(s.getKey(), t.getKey())));
+                }
+            }
+            out.println();
+            out.println("  ]");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads back a report written by {@link #writeCsv}.
+     */
+    static Report readCsv(File file) throws IOException {
+        final Report report = new Report();
+        final BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            final String header = in.readLine();
+            if (header == null || !header.startsWith("subject,threads,seconds,mops")) {
+                throw new IllegalArgumentException("Not a report: " + file);
+            }
+            for (String line; (line = in.readLine()) != null; ) {
+                if (line.isEmpty()) continue;
+                final String[] fields = line.split(",");
+                report.add(fields[0], Integer.parseInt(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+            }
+        } finally {
+            in.close();
+        }
+        return report;
+    }
+
+    /**
+     * Returns a description of every point, present in both reports, whose throughput has dropped below the
+     * baseline's by more than the tolerance, a fraction.
+     */
+    List<String> regressions(Report baseline, double tolerance) {
+        final List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, TreeMap<Integer, Result>> s : results.entrySet()) {
+            final TreeMap<Integer, Result> before = baseline.results.get(s.getKey());
+            if (before == null) continue;
+            for (Map.Entry<Integer, Result> t : s.getValue().entrySet()) {
+                final Result was = before.get(t.getKey());
+                if (was == null) continue;
+                final double now = t.getValue().mops;
+                if (now < was.mops * (1 - tolerance)) {
+                    regressions.add(String.format(Locale.ROOT, "%s Threads=%d  %.3f -> %.3f Mops/s (%+.1f%%)",
+                            s.getKey(), t.getKey(), was.mops, now, 100 * (now - was.mops) / was.mops));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static final class Result {
+        final double seconds;
+        final double mops;
+
+        Result(double seconds, double mops) {
+            this.seconds = seconds;
+            this.mops = mops;
+        }
+    }
+}
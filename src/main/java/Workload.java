@@ -0,0 +1,255 @@
+import com.google.common.cache.StatsCounter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A precomputed sequence of StatsCounter calls driving the BenchRunner. The sequence is generated once from a spec, so
+ * the runner only walks two arrays and the random draws stay out of the measurement.
+ * <p/>
+ * A spec is a comma separated list of key=value pairs, all optional:
+ * <pre>
+ *   hit=90,miss=6,success=3,exception=0.5,eviction=0.5   relative weights of the record calls
+ *   batch=zipf:1.1:1000                                  count passed to recordHits/recordMisses
+ *   loadTime=uniform:0:2048                              nanoseconds passed to recordLoad*
+ *   snapshotEvery=10000                                  one snapshot() per this many calls, 0 for none
+ *   order=interleaved                                    interleaved, or phased in runs of one call type
+ *   phase=500                                            calls per block when phased
+ *   seed=3405691582
+ * </pre>
+ * Distributions are fixed:N, uniform:MIN:MAX (MAX exclusive) or zipf:S:MAX (1 to MAX with exponent S).
+ */
+final class Workload {
+
+    static final byte HIT = 0;
+    static final byte MISS = 1;
+    static final byte LOAD_SUCCESS = 2;
+    static final byte LOAD_EXCEPTION = 3;
+    static final byte EVICTION = 4;
+    static final byte SNAPSHOT = 5;
+
+    private static final int TABLE = 1 << 16;
+
+    private static final int ITERATION = 500;
+
+    final byte[] ops;
+    final int[] args;
+
+    /**
+     * Calls making up one iteration of the BenchRunner.
+     */
+    final int opsPerIteration;
+
+    private final String desc;
+
+    private Workload(byte[] ops, int[] args, int opsPerIteration, String desc) {
+        this.ops = ops;
+        this.args = args;
+        this.opsPerIteration = opsPerIteration;
+        this.desc = desc;
+    }
+
+    /**
+     * The original fixed round robin: 100 hits, misses, load exceptions, load successes and evictions, then a
+     * snapshot, with hit counts taken from {@code samples}.
+     */
+    static Workload legacy(int[] samples) {
+        // The arguments cycle through 256 values while an iteration consumes 400, so 16 iterations repeat exactly.
+        final int iterations = 16;
+        final int perIteration = 501;
+        final byte[] ops = new byte[iterations * perIteration];
+        final int[] args = new int[ops.length];
+        int ptr = 0;
+        int n = 0;
+        for (int j = 0; j < iterations; j++) {
+            for (int i = 0; i < 100; i++, ptr++, n++) {
+                ops[n] = HIT;
+                args[n] = samples[ptr % 256];
+            }
+            for (int i = 0; i < 100; i++, ptr++, n++) {
+                ops[n] = MISS;
+                args[n] = ptr % 256;
+            }
+            for (int i = 0; i < 100; i++, ptr++, n++) {
+                ops[n] = LOAD_EXCEPTION;
+                args[n] = ptr % 256;
+            }
+            for (int i = 0; i < 100; i++, ptr++, n++) {
+                ops[n] = LOAD_SUCCESS;
+                args[n] = ptr % 256;
+            }
+            for (int i = 0; i < 100; i++, n++) {
+                ops[n] = EVICTION;
+            }
+            ops[n++] = SNAPSHOT;
+        }
+        return new Workload(ops, args, perIteration, "legacy");
+    }
+
+    static Workload parse(String spec) {
+        final double[] weights = {1, 1, 1, 1, 1};
+        String batch = "fixed:1";
+        String loadTime = "uniform:0:2048";
+        int snapshotEvery = 0;
+        boolean phased = false;
+        int phase = ITERATION;
+        long seed = 0xCAFEBABEL;
+
+        for (String pair : spec.split(",")) {
+            if (pair.trim().isEmpty()) continue;
+            final String[] kv = pair.split("=", 2);
+            if (kv.length != 2) throw new IllegalArgumentException("Expected key=value but got: " + pair);
+            final String key = kv[0].trim();
+            final String value = kv[1].trim();
+            if (key.equals("hit")) weights[HIT] = Double.parseDouble(value);
+            else if (key.equals("miss")) weights[MISS] = Double.parseDouble(value);
+            else if (key.equals("success")) weights[LOAD_SUCCESS] = Double.parseDouble(value);
+            else if (key.equals("exception")) weights[LOAD_EXCEPTION] = Double.parseDouble(value);
+            else if (key.equals("eviction")) weights[EVICTION] = Double.parseDouble(value);
+            else if (key.equals("batch")) batch = value;
+            else if (key.equals("loadTime")) loadTime = value;
+            else if (key.equals("snapshotEvery")) snapshotEvery = Integer.parseInt(value);
+            else if (key.equals("order")) phased = parseOrder(value);
+            else if (key.equals("phase")) phase = Integer.parseInt(value);
+            else if (key.equals("seed")) seed = Long.parseLong(value);
+            else throw new IllegalArgumentException("Unknown workload key: " + key);
+        }
+
+        double total = 0;
+        for (double w : weights) {
+            if (w < 0) throw new IllegalArgumentException("Weights must not be negative");
+            total += w;
+        }
+        if (total <= 0) throw new IllegalArgumentException("At least one weight must be positive");
+        if (phase < 1) throw new IllegalArgumentException("phase must be positive");
+
+        final Random rnd = new Random(seed);
+        final Distribution batches = Distribution.parse(batch);
+        final Distribution loadTimes = Distribution.parse(loadTime);
+
+        final byte[] kinds = phased ? phased(weights, total, phase) : interleaved(weights, total, rnd);
+        final byte[] ops = new byte[TABLE];
+        final int[] args = new int[TABLE];
+        for (int i = 0, k = 0; i < TABLE; i++) {
+            if (snapshotEvery > 0 && (i + 1) % snapshotEvery == 0) {
+                ops[i] = SNAPSHOT;
+                continue;
+            }
+            final byte op = kinds[k++ % kinds.length];
+            ops[i] = op;
+            if (op == HIT || op == MISS) args[i] = (int) batches.next(rnd);
+            else if (op == LOAD_SUCCESS || op == LOAD_EXCEPTION) args[i] = (int) loadTimes.next(rnd);
+        }
+        return new Workload(ops, args, ITERATION, spec);
+    }
+
+    private static boolean parseOrder(String value) {
+        if (value.equals("phased")) return true;
+        if (value.equals("interleaved")) return false;
+        throw new IllegalArgumentException("order must be interleaved or phased but got: " + value);
+    }
+
+    private static byte[] interleaved(double[] weights, double total, Random rnd) {
+        final byte[] kinds = new byte[TABLE];
+        for (int i = 0; i < TABLE; i++) {
+            double r = rnd.nextDouble() * total;
+            byte op = 0;
+            while (op < EVICTION && (r -= weights[op]) >= 0) op++;
+            kinds[i] = op;
+        }
+        return kinds;
+    }
+
+    /**
+     * One block of {@code phase} calls, each call type in a single run sized by its weight.
+     */
+    private static byte[] phased(double[] weights, double total, int phase) {
+        final byte[] kinds = new byte[phase];
+        int n = 0;
+        final byte[] order = {HIT, MISS, LOAD_EXCEPTION, LOAD_SUCCESS, EVICTION};
+        for (byte op : order) {
+            final int run = (int) Math.round(phase * weights[op] / total);
+            for (int i = 0; i < run && n < phase; i++) kinds[n++] = op;
+        }
+        // Rounding may leave the block short, the heaviest call type takes up the slack.
+        byte heaviest = 0;
+        for (byte op = 1; op <= EVICTION; op++) if (weights[op] > weights[heaviest]) heaviest = op;
+        while (n < phase) kinds[n++] = heaviest;
+        return kinds;
+    }
+
+    /**
+     * Applies the call at {@code i}, which must be less than {@code ops.length}.
+     */
+    void apply(StatsCounter subject, int i) {
+        switch (ops[i]) {
+            case HIT:
+                subject.recordHits(args[i]);
+                break;
+            case MISS:
+                subject.recordMisses(args[i]);
+                break;
+            case LOAD_SUCCESS:
+                subject.recordLoadSuccess(args[i]);
+                break;
+            case LOAD_EXCEPTION:
+                subject.recordLoadException(args[i]);
+                break;
+            case EVICTION:
+                subject.recordEviction();
+                break;
+            default:
+                subject.snapshot();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return desc;
+    }
+
+    private abstract static class Distribution {
+        abstract long next(Random rnd);
+
+        static Distribution parse(String spec) {
+            final String[] parts = spec.split(":");
+            if (parts[0].equals("fixed") && parts.length == 2) {
+                final long value = Long.parseLong(parts[1]);
+                return new Distribution() {
+                    long next(Random rnd) {
+                        return value;
+                    }
+                };
+            }
+            if (parts[0].equals("uniform") && parts.length == 3) {
+                final int min = Integer.parseInt(parts[1]);
+                final int max = Integer.parseInt(parts[2]);
+                if (max <= min) throw new IllegalArgumentException("uniform needs MIN < MAX: " + spec);
+                return new Distribution() {
+                    long next(Random rnd) {
+                        return min + rnd.nextInt(max - min);
+                    }
+                };
+            }
+            if (parts[0].equals("zipf") && parts.length == 3) {
+                final double s = Double.parseDouble(parts[1]);
+                final int max = Integer.parseInt(parts[2]);
+                if (max < 1) throw new IllegalArgumentException("zipf needs MAX >= 1: " + spec);
+                final double[] cdf = new double[max];
+                double sum = 0;
+                for (int k = 1; k <= max; k++) {
+                    sum += 1 / Math.pow(k, s);
+                    cdf[k - 1] = sum;
+                }
+                final double norm = sum;
+                return new Distribution() {
+                    long next(Random rnd) {
+                        final int i = Arrays.binarySearch(cdf, rnd.nextDouble() * norm);
+                        return (i >= 0 ? i : -i - 1) + 1;
+                    }
+                };
+            }
+            throw new IllegalArgumentException("Unknown distribution: " + spec);
+        }
+    }
+}
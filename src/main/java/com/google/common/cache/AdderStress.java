@@ -0,0 +1,600 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.BoundedStripedLongAdder;
+import com.hyperscalelogic.util.concurrent.PaddedStripedAtomicLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedAtomicLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedLocalLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedLockLongAdder;
+import com.hyperscalelogic.util.concurrent.StripedLongMaxUpdater;
+import com.hyperscalelogic.util.concurrent.StripedLongMinUpdater;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stress tests for the adders and max/min updaters behind the stats counters, in the style of jcstress: actor threads
+ * hammer a fresh instance while an observer thread reads it, and once the actors are done an arbiter checks the final
+ * state against what they did.
+ * <p/>
+ * Every update is a multiple of {@link #STEP}, which has bits set in both halves of a long, so a torn read shows up as
+ * a value that is not a multiple of it. Each actor publishes how many of its updates have returned, and the observer
+ * reads that before reading the adder, so an update that is published late (as a plain write to a stripe would be)
+ * shows up as a sum smaller than the updates already known to have completed. Fresh instances with many short rounds
+ * race the actors' first updates against cell table initialization and expansion, where a lost update shows up in the
+ * final sum, and {@link Adder#sumThenReset} racing with the actors must neither lose an add nor count one twice.
+ */
+public final class AdderStress {
+
+    /** A long with bits set in both 32 bit halves, that every update is a multiple of. */
+    static final long STEP = (1L << 32) + 1;
+
+    private static final int ACTORS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private AdderStress() {
+    }
+
+    /**
+     * Runs every scenario against every subject, the short expansion rounds the given number of times and the longer
+     * ones a tenth as often, and throws IllegalStateException on the first failure.
+     */
+    public static void run(int rounds) throws InterruptedException {
+        final int longRounds = Math.max(1, rounds / 10);
+        System.out.format("Stress Actors=%d  Rounds=%d", ACTORS, rounds).println();
+        for (Subject subject : Subject.values()) {
+            addSum(subject, "AddSum", longRounds, 10000);
+            addSum(subject, "Expansion", rounds, 16);
+            drain(subject, longRounds, 10000);
+            if (subject.create().reset()) {
+                reset(subject, longRounds, 10000);
+            }
+        }
+        for (RangeSubject subject : RangeSubject.values()) {
+            update(subject, longRounds, 10000);
+            thenReset(subject, longRounds, 10000);
+        }
+    }
+
+    /**
+     * Actors each add STEP ops times. The observer checks that every sum is whole, never goes backwards, covers every
+     * add already published and never exceeds the adds made, and the arbiter that the final sum counts every add.
+     */
+    private static void addSum(Subject subject, String scenario, int rounds, final int ops) throws InterruptedException {
+        long observations = 0;
+        for (int r = 0; r < rounds; r++) {
+            final Adder adder = subject.create();
+            final AtomicLongArray done = new AtomicLongArray(ACTORS);
+            final Runnable[] actors = new Runnable[ACTORS];
+            for (int i = 0; i < ACTORS; i++) {
+                final int id = i;
+                actors[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 1; j <= ops; j++) {
+                            adder.add(STEP);
+                            done.lazySet(id, j);
+                        }
+                    }
+                };
+            }
+            final long total = (long) ACTORS * ops;
+            final Observer observer = new Observer() {
+                long last;
+
+                @Override
+                String observe() {
+                    long published = 0;
+                    for (int i = 0; i < ACTORS; i++) published += done.get(i);
+                    final long sum = adder.sum();
+                    if (sum % STEP != 0) return "torn sum " + sum;
+                    if (sum < last) return "sum went from " + last / STEP + " to " + sum / STEP;
+                    if (sum / STEP < published) return "sum " + sum / STEP + " missing published adds " + published;
+                    if (sum / STEP > total) return "sum " + sum / STEP + " exceeds adds " + total;
+                    last = sum;
+                    return null;
+                }
+            };
+            String failure = race(actors, observer);
+            if (failure == null && adder.sum() != total * STEP) {
+                failure = "final sum " + adder.sum() / STEP + " (" + adder.sum() % STEP + ") expected " + total;
+            }
+            check(subject, scenario, r, failure);
+            observations += observer.observations;
+        }
+        System.out.format("  %-20s  %-10s Rounds=%d  Observations=%d", subject, scenario, rounds, observations).println();
+    }
+
+    /**
+     * As addSum, with one more actor draining the adder with sumThenReset as it goes. The observer checks that what
+     * has been drained plus the sum never exceeds the adds made, so no add is counted twice, and the arbiter that
+     * every drain plus the final sum counts every add, so none is lost.
+     */
+    private static void drain(Subject subject, int rounds, final int ops) throws InterruptedException {
+        long observations = 0;
+        for (int r = 0; r < rounds; r++) {
+            final Adder adder = subject.create();
+            final AtomicLongArray drained = new AtomicLongArray(1);
+            final Runnable[] actors = new Runnable[ACTORS + 1];
+            for (int i = 0; i < ACTORS; i++) {
+                actors[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < ops; j++) {
+                            adder.add(STEP);
+                        }
+                    }
+                };
+            }
+            actors[ACTORS] = new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ops / 100; j++) {
+                        drained.lazySet(0, drained.get(0) + adder.sumThenReset());
+                        Thread.yield();
+                    }
+                }
+            };
+            final long total = (long) ACTORS * ops;
+            final Observer observer = new Observer() {
+                @Override
+                String observe() {
+                    final long before = drained.get(0);
+                    final long sum = adder.sum();
+                    if (sum % STEP != 0 || before % STEP != 0) return "torn sum " + sum + " or drain " + before;
+                    if (sum < 0 || (before + sum) / STEP > total) {
+                        return "drained " + before / STEP + " and sum " + sum / STEP + " exceed adds " + total;
+                    }
+                    return null;
+                }
+            };
+            String failure = race(actors, observer);
+            if (failure == null) {
+                final long counted = drained.get(0) + adder.sumThenReset();
+                if (counted != total * STEP) failure = "drained " + counted / STEP + " (" + counted % STEP + ") expected " + total;
+                else if (adder.sum() != 0) failure = "sum " + adder.sum() + " after quiescent drain";
+            }
+            check(subject, "Drain", r, failure);
+            observations += observer.observations;
+        }
+        System.out.format("  %-20s  %-10s Rounds=%d  Observations=%d", subject, "Drain", rounds, observations).println();
+    }
+
+    /**
+     * As addSum, with one more actor resetting the adder as it goes, so sums may drop. The observer checks that they
+     * stay whole and within the adds made, then once quiescent a reset must leave exactly zero and later adds count
+     * from there.
+     */
+    private static void reset(Subject subject, int rounds, final int ops) throws InterruptedException {
+        long observations = 0;
+        for (int r = 0; r < rounds; r++) {
+            final Adder adder = subject.create();
+            final Runnable[] actors = new Runnable[ACTORS + 1];
+            for (int i = 0; i < ACTORS; i++) {
+                actors[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < ops; j++) {
+                            adder.add(STEP);
+                        }
+                    }
+                };
+            }
+            actors[ACTORS] = new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ops / 100; j++) {
+                        adder.reset();
+                        Thread.yield();
+                    }
+                }
+            };
+            final long total = (long) ACTORS * ops;
+            final Observer observer = new Observer() {
+                @Override
+                String observe() {
+                    final long sum = adder.sum();
+                    if (sum % STEP != 0) return "torn sum " + sum;
+                    if (sum < 0 || sum / STEP > total) return "sum " + sum / STEP + " outside 0.." + total;
+                    return null;
+                }
+            };
+            String failure = race(actors, observer);
+            if (failure == null) {
+                adder.reset();
+                if (adder.sum() != 0) failure = "sum " + adder.sum() + " after quiescent reset";
+                adder.add(STEP);
+                if (failure == null && adder.sum() != STEP) failure = "sum " + adder.sum() + " after reset and one add";
+            }
+            check(subject, "Reset", r, failure);
+            observations += observer.observations;
+        }
+        System.out.format("  %-20s  %-10s Rounds=%d  Observations=%d", subject, "Reset", rounds, observations).println();
+    }
+
+    /**
+     * Actors each apply ops random multiples of STEP, publishing the best they have applied so far. The observer checks
+     * that the result is whole, never goes backwards, covers every published update and never passes the best value
+     * any actor will apply, and the arbiter that the final result is that best value and a reset restores the initial
+     * value.
+     */
+    private static void update(RangeSubject subject, int rounds, final int ops) throws InterruptedException {
+        long observations = 0;
+        for (int r = 0; r < rounds; r++) {
+            final Updater updater = subject.create();
+            final AtomicLongArray best = new AtomicLongArray(ACTORS);
+            final Runnable[] actors = new Runnable[ACTORS];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ACTORS; i++) {
+                best.set(i, Long.MIN_VALUE);
+                final long[] values = values(r, i, ops);
+                for (int j = 0; j < ops; j++) max = Math.max(max, values[j]);
+                final int id = i;
+                actors[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        long applied = Long.MIN_VALUE;
+                        for (int j = 0; j < ops; j++) {
+                            updater.update(values[j]);
+                            if (values[j] > applied) best.lazySet(id, applied = values[j]);
+                        }
+                    }
+                };
+            }
+            final long expected = max;
+            final Observer observer = new Observer() {
+                long last = Long.MIN_VALUE;
+
+                @Override
+                String observe() {
+                    long published = Long.MIN_VALUE;
+                    for (int i = 0; i < ACTORS; i++) published = Math.max(published, best.get(i));
+                    final long value = updater.get();
+                    if (value != Long.MIN_VALUE && value % STEP != 0) return "torn value " + value;
+                    if (value < last) return "value went from " + last + " to " + value;
+                    if (value < published) return "value " + value + " behind published " + published;
+                    if (value > expected) return "value " + value + " beyond any update " + expected;
+                    last = value;
+                    return null;
+                }
+            };
+            String failure = race(actors, observer);
+            if (failure == null && updater.get() != expected) {
+                failure = "final value " + updater.get() + " expected " + expected;
+            }
+            if (failure == null) {
+                updater.reset();
+                if (updater.get() != Long.MIN_VALUE) failure = "value " + updater.get() + " after quiescent reset";
+            }
+            check(subject, "Update", r, failure);
+            observations += observer.observations;
+        }
+        System.out.format("  %-20s  %-10s Rounds=%d  Observations=%d", subject, "Update", rounds, observations).println();
+    }
+
+    /**
+     * Actors each apply ops random multiples of STEP while one more actor repeatedly takes the result with
+     * getThenReset. The observer checks that every result is whole and never passes the best value any actor will
+     * apply, and the arbiter that the best of every interval's result and the final one is that value, so an update
+     * racing a reset is never lost.
+     */
+    private static void thenReset(RangeSubject subject, int rounds, final int ops) throws InterruptedException {
+        long observations = 0;
+        for (int r = 0; r < rounds; r++) {
+            final Updater updater = subject.create();
+            final AtomicLongArray taken = new AtomicLongArray(1);
+            taken.set(0, Long.MIN_VALUE);
+            final Runnable[] actors = new Runnable[ACTORS + 1];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ACTORS; i++) {
+                final long[] values = values(r, i, ops);
+                for (int j = 0; j < ops; j++) max = Math.max(max, values[j]);
+                actors[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < ops; j++) {
+                            updater.update(values[j]);
+                        }
+                    }
+                };
+            }
+            actors[ACTORS] = new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < ops / 100; j++) {
+                        taken.lazySet(0, Math.max(taken.get(0), updater.getThenReset()));
+                        Thread.yield();
+                    }
+                }
+            };
+            final long expected = max;
+            final Observer observer = new Observer() {
+                @Override
+                String observe() {
+                    final long value = updater.get();
+                    if (value != Long.MIN_VALUE && value % STEP != 0) return "torn value " + value;
+                    if (value > expected) return "value " + value + " beyond any update " + expected;
+                    return null;
+                }
+            };
+            String failure = race(actors, observer);
+            if (failure == null) {
+                final long best = Math.max(taken.get(0), updater.getThenReset());
+                if (best != expected) failure = "best of intervals " + best + " expected " + expected;
+                else if (updater.get() != Long.MIN_VALUE) failure = "value " + updater.get() + " after quiescent reset";
+            }
+            check(subject, "ThenReset", r, failure);
+            observations += observer.observations;
+        }
+        System.out.format("  %-20s  %-10s Rounds=%d  Observations=%d", subject, "ThenReset", rounds, observations).println();
+    }
+
+    /**
+     * Returns the values actor i applies in round r, random multiples of STEP of either sign.
+     */
+    private static long[] values(int r, int i, int ops) {
+        final long[] values = new long[ops];
+        final Random rnd = new Random(31L * r + i);
+        for (int j = 0; j < ops; j++) {
+            values[j] = (rnd.nextInt(1 << 20) - (1 << 19)) * STEP;
+        }
+        return values;
+    }
+
+    /**
+     * Starts the actors together and observes until they have all finished, returning the first failure the observer
+     * reported or null.
+     */
+    private static String race(Runnable[] actors, Observer observer) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[actors.length];
+        for (int i = 0; i < actors.length; i++) {
+            final Runnable actor = actors[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    actor.run();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+
+        String failure = null;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (int i = 0; i < threads.length; i++) running |= threads[i].isAlive();
+            if (failure == null) failure = observer.observe();
+            observer.observations++;
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        return failure;
+    }
+
+    private static void check(Object subject, String scenario, int round, String failure) {
+        if (failure != null) {
+            System.out.format("  %-20s  %-10s Round=%d  FAILED: %s", subject, scenario, round, failure).println();
+            throw new IllegalStateException("Validation failed!");
+        }
+    }
+
+    private abstract static class Observer {
+
+        long observations;
+
+        /** Reads the subject once and returns what is wrong with what it saw, or null. */
+        abstract String observe();
+    }
+
+    /** The operations the scenarios need, over each adder's own methods. */
+    abstract static class Adder {
+
+        abstract void add(long x);
+
+        abstract long sum();
+
+        abstract long sumThenReset();
+
+        /** Resets the adder to zero, returning false without doing anything if it cannot be reset. */
+        boolean reset() {
+            return false;
+        }
+    }
+
+    /** A max updater, or a min updater fed and read negated, so that the same checks apply to both. */
+    abstract static class Updater {
+
+        abstract void update(long x);
+
+        abstract long get();
+
+        abstract long getThenReset();
+
+        abstract void reset();
+    }
+
+    enum Subject {
+        Striped64 {
+            @Override
+            Adder create() {
+                final LongAdder adder = new LongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                    boolean reset() { adder.reset(); return true; }
+                };
+            }
+        },
+        VarHandleStriped64 {
+            @Override
+            Adder create() {
+                final VarHandleLongAdder adder = new VarHandleLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                    boolean reset() { adder.reset(); return true; }
+                };
+            }
+        },
+        JdkLongAdder {
+            @Override
+            Adder create() {
+                final java.util.concurrent.atomic.LongAdder adder = new java.util.concurrent.atomic.LongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                    boolean reset() { adder.reset(); return true; }
+                };
+            }
+        },
+        StripedAtomic {
+            @Override
+            Adder create() {
+                final StripedAtomicLongAdder adder = new StripedAtomicLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                };
+            }
+        },
+        PaddedStripedAtomic {
+            @Override
+            Adder create() {
+                final PaddedStripedAtomicLongAdder adder = new PaddedStripedAtomicLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                };
+            }
+        },
+        BoundedStriped {
+            @Override
+            Adder create() {
+                final BoundedStripedLongAdder adder = new BoundedStripedLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                };
+            }
+        },
+        StripedLock {
+            @Override
+            Adder create() {
+                final StripedLockLongAdder adder = new StripedLockLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                };
+            }
+        },
+        StripedLocal {
+            @Override
+            Adder create() {
+                final StripedLocalLongAdder adder = new StripedLocalLongAdder();
+                return new Adder() {
+                    void add(long x) { adder.add(x); }
+                    long sum() { return adder.sum(); }
+                    long sumThenReset() { return adder.sumThenReset(); }
+                };
+            }
+        };
+
+        abstract Adder create();
+    }
+
+    enum RangeSubject {
+        LongMax {
+            @Override
+            Updater create() {
+                final LongMaxUpdater updater = new LongMaxUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(x); }
+                    long get() { return updater.max(); }
+                    long getThenReset() { return updater.maxThenReset(); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        },
+        LongMin {
+            @Override
+            Updater create() {
+                final LongMinUpdater updater = new LongMinUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(-x); }
+                    long get() { return negate(updater.min()); }
+                    long getThenReset() { return negate(updater.minThenReset()); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        },
+        VarHandleLongMax {
+            @Override
+            Updater create() {
+                final VarHandleLongMaxUpdater updater = new VarHandleLongMaxUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(x); }
+                    long get() { return updater.max(); }
+                    long getThenReset() { return updater.maxThenReset(); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        },
+        VarHandleLongMin {
+            @Override
+            Updater create() {
+                final VarHandleLongMinUpdater updater = new VarHandleLongMinUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(-x); }
+                    long get() { return negate(updater.min()); }
+                    long getThenReset() { return negate(updater.minThenReset()); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        },
+        StripedLongMax {
+            @Override
+            Updater create() {
+                final StripedLongMaxUpdater updater = new StripedLongMaxUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(x); }
+                    long get() { return updater.max(); }
+                    long getThenReset() { return updater.maxThenReset(); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        },
+        StripedLongMin {
+            @Override
+            Updater create() {
+                final StripedLongMinUpdater updater = new StripedLongMinUpdater();
+                return new Updater() {
+                    void update(long x) { updater.update(-x); }
+                    long get() { return negate(updater.min()); }
+                    long getThenReset() { return negate(updater.minThenReset()); }
+                    void reset() { updater.reset(); }
+                };
+            }
+        };
+
+        abstract Updater create();
+
+        /** Maps a min updater's initial value to a max updater's, and any value it was fed back to the original. */
+        static long negate(long min) {
+            return min == Long.MAX_VALUE ? Long.MIN_VALUE : -min;
+        }
+    }
+}
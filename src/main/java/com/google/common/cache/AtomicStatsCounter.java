@@ -60,6 +60,35 @@ public final class AtomicStatsCounter implements StatsCounter {
                 evictionCount.longValue());
     }
 
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.longValue(),
+                missCount.longValue(),
+                loadSuccessCount.longValue(),
+                loadExceptionCount.longValue(),
+                totalLoadTime.longValue(),
+                evictionCount.longValue());
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.getAndSet(0),
+                missCount.getAndSet(0),
+                loadSuccessCount.getAndSet(0),
+                loadExceptionCount.getAndSet(0),
+                totalLoadTime.getAndSet(0),
+                evictionCount.getAndSet(0));
+    }
+
     /**
      * Increments all counters by the values in {@code other}.
      */
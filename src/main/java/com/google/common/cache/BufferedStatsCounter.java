@@ -0,0 +1,254 @@
+package com.google.common.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StatsCounter} where each thread accumulates into plain, non-volatile fields of its own buffer and only
+ * publishes them to shared Striped64 {@link LongAdder}s now and then, so the hot path is a thread-local lookup and a
+ * plain add.
+ * <p/>
+ * A thread checks whether to publish every 64 record calls (or every {@code flushOps} if smaller). It publishes when
+ * it has buffered {@code flushOps} calls, when {@code flushNanos} have passed since it last published, or when a
+ * {@link #snapshot} has asked for it. So while a thread keeps recording, {@link #snapshot} misses at most
+ * {@code flushOps} of its calls, and at most about {@code flushNanos} of them. Publishing is only ever done by the
+ * owning thread, though, so a thread that stops recording keeps up to {@code flushOps - 1} calls buffered until it
+ * records again, calls {@link #flush}, or terminates: for as long as a thread stays idle, every snapshot and drain is
+ * missing its last calls, however many are taken in the meantime. Buffers of terminated threads are published by the
+ * next {@link #snapshot}. Threads that may go idle for long should call {@link #flush} before they do.
+ */
+public final class BufferedStatsCounter implements StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadExceptionCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final int flushOps;
+    private final int checkMask;
+    private final long flushNanos;
+
+    /**
+     * Bumped by {@link #snapshot} to ask every recording thread to publish at its next check.
+     */
+    private final AtomicInteger flushRequests = new AtomicInteger();
+
+    private final List<Buffer> buffers = new CopyOnWriteArrayList<Buffer>();
+
+    private final ThreadLocal<Buffer> buffer = new ThreadLocal<Buffer>() {
+        protected Buffer initialValue() {
+            final Buffer b = new Buffer(Thread.currentThread());
+            buffers.add(b);
+            return b;
+        }
+    };
+
+    /**
+     * Constructs an instance publishing every 1024 record calls or every millisecond.
+     */
+    public BufferedStatsCounter() {
+        this(1024, 1000000L);
+    }
+
+    /**
+     * @param flushOps   record calls a thread may buffer, rounded up to a power of two
+     * @param flushNanos nanoseconds after which a recording thread publishes regardless of {@code flushOps}
+     */
+    public BufferedStatsCounter(int flushOps, long flushNanos) {
+        if (flushOps < 1) throw new IllegalArgumentException("flushOps must be positive");
+        int ops = 1;
+        while (ops < flushOps) ops <<= 1;
+        this.flushOps = ops;
+        this.checkMask = Math.min(ops, 64) - 1;
+        this.flushNanos = flushNanos;
+    }
+
+    /**
+     * Returns the number of record calls a thread may buffer, which bounds how far behind {@link #snapshot} can be
+     * for each recording thread.
+     */
+    public int flushOps() {
+        return flushOps;
+    }
+
+    @Override
+    public void recordHits(int count) {
+        final Buffer b = buffer.get();
+        b.hitCount += count;
+        tick(b);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        final Buffer b = buffer.get();
+        b.missCount += count;
+        tick(b);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        final Buffer b = buffer.get();
+        b.loadSuccessCount += 1;
+        b.totalLoadTime += loadTime;
+        tick(b);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        final Buffer b = buffer.get();
+        b.loadExceptionCount += 1;
+        b.totalLoadTime += loadTime;
+        tick(b);
+    }
+
+    @Override
+    public void recordEviction() {
+        final Buffer b = buffer.get();
+        b.evictionCount += 1;
+        tick(b);
+    }
+
+    /**
+     * Publishes the calling thread's buffer.
+     */
+    public void flush() {
+        publish(buffer.get());
+    }
+
+    /**
+     * Publishes the calling thread's buffer and those of terminated threads, asks every other recording thread to
+     * publish at its next check, then returns the published counts.
+     */
+    @Override
+    public CacheStats snapshot() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        snapshotInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        flushRequests.incrementAndGet();
+        flush();
+        reclaim();
+        stats.set(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    /**
+     * Publishes as {@link #snapshot} does, then returns and resets the published counts. Calls still buffered by
+     * other threads are not lost, they are published into a later interval.
+     */
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        flushRequests.incrementAndGet();
+        flush();
+        reclaim();
+        stats.set(
+                hitCount.sumThenReset(),
+                missCount.sumThenReset(),
+                loadSuccessCount.sumThenReset(),
+                loadExceptionCount.sumThenReset(),
+                totalLoadTime.sumThenReset(),
+                evictionCount.sumThenReset());
+    }
+
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        hitCount.add(otherStats.hitCount());
+        missCount.add(otherStats.missCount());
+        loadSuccessCount.add(otherStats.loadSuccessCount());
+        loadExceptionCount.add(otherStats.loadExceptionCount());
+        totalLoadTime.add(otherStats.totalLoadTime());
+        evictionCount.add(otherStats.evictionCount());
+    }
+
+    private void tick(Buffer b) {
+        if ((++b.ops & checkMask) == 0) {
+            final int requests = flushRequests.get();
+            if (b.ops >= flushOps || requests != b.flushRequests || System.nanoTime() - b.lastFlush >= flushNanos) {
+                b.flushRequests = requests;
+                publish(b);
+            }
+        }
+    }
+
+    private void publish(Buffer b) {
+        if (b.hitCount != 0) {
+            hitCount.add(b.hitCount);
+            b.hitCount = 0;
+        }
+        if (b.missCount != 0) {
+            missCount.add(b.missCount);
+            b.missCount = 0;
+        }
+        if (b.loadSuccessCount != 0) {
+            loadSuccessCount.add(b.loadSuccessCount);
+            b.loadSuccessCount = 0;
+        }
+        if (b.loadExceptionCount != 0) {
+            loadExceptionCount.add(b.loadExceptionCount);
+            b.loadExceptionCount = 0;
+        }
+        if (b.totalLoadTime != 0) {
+            totalLoadTime.add(b.totalLoadTime);
+            b.totalLoadTime = 0;
+        }
+        if (b.evictionCount != 0) {
+            evictionCount.add(b.evictionCount);
+            b.evictionCount = 0;
+        }
+        b.ops = 0;
+        b.lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Publishes and drops the buffers of terminated threads. A terminated thread's plain writes are visible once it
+     * is seen to be dead.
+     */
+    private synchronized void reclaim() {
+        for (Buffer b : buffers) {
+            if (b.isDead()) {
+                publish(b);
+                buffers.remove(b);
+            }
+        }
+    }
+
+    private static final class Buffer extends WeakReference<Thread> {
+        long hitCount;
+        long missCount;
+        long loadSuccessCount;
+        long loadExceptionCount;
+        long totalLoadTime;
+        long evictionCount;
+        int ops;
+        int flushRequests;
+        long lastFlush = System.nanoTime();
+
+        Buffer(Thread owner) {
+            super(owner);
+        }
+
+        boolean isDead() {
+            final Thread t = get();
+            return t == null || !t.isAlive();
+        }
+    }
+}
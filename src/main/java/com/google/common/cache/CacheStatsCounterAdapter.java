@@ -0,0 +1,65 @@
+package com.google.common.cache;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Presents one of the {@link StatsCounter} implementations as the {@link AbstractCache.StatsCounter} that
+ * {@link LocalCache} records into, so that real caches can be built on top of it.
+ */
+public final class CacheStatsCounterAdapter implements AbstractCache.StatsCounter {
+    private final StatsCounter counter;
+
+    public CacheStatsCounterAdapter(StatsCounter counter) {
+        if (counter == null) throw new NullPointerException("counter");
+        this.counter = counter;
+    }
+
+    /**
+     * Makes caches built by the builder record their statistics into counters obtained from the supplier, in place
+     * of Guava's SimpleStatsCounter. LocalCache asks for one counter per segment plus one for the whole cache, so the
+     * supplier decides whether they share an instance.
+     */
+    public static <K, V> CacheBuilder<K, V> recordStats(CacheBuilder<K, V> builder, final Supplier<? extends StatsCounter> counters) {
+        builder.statsCounterSupplier = new Supplier<AbstractCache.StatsCounter>() {
+            @Override
+            public AbstractCache.StatsCounter get() {
+                return new CacheStatsCounterAdapter(counters.get());
+            }
+        };
+        return builder;
+    }
+
+    public StatsCounter counter() {
+        return counter;
+    }
+
+    @Override
+    public void recordHits(int count) {
+        counter.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        counter.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        counter.recordLoadSuccess(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        counter.recordLoadException(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        counter.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return counter.snapshot();
+    }
+}
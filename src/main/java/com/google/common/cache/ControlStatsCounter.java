@@ -50,6 +50,35 @@ public final class ControlStatsCounter implements StatsCounter {
                 evictionCount);
     }
 
+    @Override
+    public synchronized void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount,
+                missCount,
+                loadSuccessCount,
+                loadExceptionCount,
+                totalLoadTime,
+                evictionCount);
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public synchronized void drainInto(MutableCacheStats stats) {
+        snapshotInto(stats);
+        hitCount = 0;
+        missCount = 0;
+        loadSuccessCount = 0;
+        loadExceptionCount = 0;
+        totalLoadTime = 0;
+        evictionCount = 0;
+    }
+
     public synchronized void incrementBy(StatsCounter other) {
         final CacheStats otherStats = other.snapshot();
 
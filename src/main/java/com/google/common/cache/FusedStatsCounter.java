@@ -0,0 +1,236 @@
+package com.google.common.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * A {@link StatsCounter} striped across threads like {@link StripedLocalStatsCounter}, but where each stripe is a
+ * single padded cell holding all six fields. A record call resolves its stripe once and writes to one cache line,
+ * and {@link #snapshot} walks one list of cells instead of six.
+ * <p/>
+ * Cells are only ever written by their owners, so {@link #drain} does not clear them. It remembers the totals it read
+ * instead, and snapshots and later drains subtract them.
+ * <p/>
+ * Each cell weakly references the thread that owns it. Whenever a new thread registers a cell, the cells of threads
+ * that have since terminated are folded into a base cell and dropped, as {@code StripedLocalLongAdder} does with its
+ * stripes, so snapshots and memory stay proportional to the live threads.
+ */
+public final class FusedStatsCounter implements StatsCounter {
+
+    private static final Cell[] EMPTY = new Cell[0];
+
+    /**
+     * The base and the cells are swapped together, so a reader always sees a folded cell either in the base or in the
+     * array, never both or neither.
+     */
+    private volatile Cells cells = new Cells(new Cell(null), EMPTY);
+
+    private final ThreadLocal<Cell> cell = new ThreadLocal<Cell>() {
+        protected Cell initialValue() {
+            return register(new Cell(Thread.currentThread()));
+        }
+    };
+
+    /**
+     * The totals at the last drain. Only written by drainInto, under this.
+     */
+    private final Cell drained = new Cell(null);
+
+    public FusedStatsCounter() {
+    }
+
+    @Override
+    public void recordHits(int count) {
+        cell.get().hitCount += count;
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        cell.get().missCount += count;
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        final Cell c = cell.get();
+        c.loadSuccessCount += 1;
+        c.totalLoadTime += loadTime;
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        final Cell c = cell.get();
+        c.loadExceptionCount += 1;
+        c.totalLoadTime += loadTime;
+    }
+
+    @Override
+    public void recordEviction() {
+        cell.get().evictionCount += 1;
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        snapshotInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        // Read the drained totals first, so that a concurrent drain cannot take a value below zero.
+        final long hitCount = drained.hitCount;
+        final long missCount = drained.missCount;
+        final long loadSuccessCount = drained.loadSuccessCount;
+        final long loadExceptionCount = drained.loadExceptionCount;
+        final long totalLoadTime = drained.totalLoadTime;
+        final long evictionCount = drained.evictionCount;
+        totalInto(stats);
+        stats.set(
+                stats.hitCount() - hitCount,
+                stats.missCount() - missCount,
+                stats.loadSuccessCount() - loadSuccessCount,
+                stats.loadExceptionCount() - loadExceptionCount,
+                stats.totalLoadTime() - totalLoadTime,
+                stats.evictionCount() - evictionCount);
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public synchronized void drainInto(MutableCacheStats stats) {
+        totalInto(stats);
+        final Cell d = drained;
+        final long hitCount = stats.hitCount();
+        final long missCount = stats.missCount();
+        final long loadSuccessCount = stats.loadSuccessCount();
+        final long loadExceptionCount = stats.loadExceptionCount();
+        final long totalLoadTime = stats.totalLoadTime();
+        final long evictionCount = stats.evictionCount();
+        stats.set(
+                hitCount - d.hitCount,
+                missCount - d.missCount,
+                loadSuccessCount - d.loadSuccessCount,
+                loadExceptionCount - d.loadExceptionCount,
+                totalLoadTime - d.totalLoadTime,
+                evictionCount - d.evictionCount);
+        d.hitCount = hitCount;
+        d.missCount = missCount;
+        d.loadSuccessCount = loadSuccessCount;
+        d.loadExceptionCount = loadExceptionCount;
+        d.totalLoadTime = totalLoadTime;
+        d.evictionCount = evictionCount;
+    }
+
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        final Cell c = cell.get();
+        c.hitCount += otherStats.hitCount();
+        c.missCount += otherStats.missCount();
+        c.loadSuccessCount += otherStats.loadSuccessCount();
+        c.loadExceptionCount += otherStats.loadExceptionCount();
+        c.totalLoadTime += otherStats.totalLoadTime();
+        c.evictionCount += otherStats.evictionCount();
+    }
+
+    /**
+     * Sums every cell into {@code stats}, the totals since construction.
+     */
+    private void totalInto(MutableCacheStats stats) {
+        long hitCount = 0;
+        long missCount = 0;
+        long loadSuccessCount = 0;
+        long loadExceptionCount = 0;
+        long totalLoadTime = 0;
+        long evictionCount = 0;
+        final Cells cs = cells;
+        for (int i = -1; i < cs.cells.length; i++) {
+            final Cell c = i < 0 ? cs.base : cs.cells[i];
+            hitCount += c.hitCount;
+            missCount += c.missCount;
+            loadSuccessCount += c.loadSuccessCount;
+            loadExceptionCount += c.loadExceptionCount;
+            totalLoadTime += c.totalLoadTime;
+            evictionCount += c.evictionCount;
+        }
+        stats.set(
+                hitCount,
+                missCount,
+                loadSuccessCount,
+                loadExceptionCount,
+                totalLoadTime,
+                evictionCount);
+    }
+
+    private synchronized Cell register(Cell c) {
+        final Cells cs = cells;
+        final Cell base = new Cell(null);
+        base.add(cs.base);
+        final Cell[] live = new Cell[cs.cells.length + 1];
+        int n = 0;
+        for (int i = 0; i < cs.cells.length; i++) {
+            final Cell r = cs.cells[i];
+            if (r.isDead()) {
+                base.add(r);
+            } else {
+                live[n++] = r;
+            }
+        }
+        live[n++] = c;
+        cells = new Cells(base, n == live.length ? live : Arrays.copyOf(live, n));
+        return c;
+    }
+
+    private static final class Cells {
+        final Cell base;
+        final Cell[] cells;
+
+        Cells(Cell base, Cell[] cells) {
+            this.base = base;
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * The six counters of one thread, padded so that two cells never share a cache line. Only the owning thread
+     * writes to a cell, so plain read-modify-write of the volatile fields is safe.
+     */
+    private static final class Cell extends WeakReference<Thread> {
+        volatile long p0, p1, p2, p3, p4, p5, p6;
+        volatile long hitCount;
+        volatile long missCount;
+        volatile long loadSuccessCount;
+        volatile long loadExceptionCount;
+        volatile long totalLoadTime;
+        volatile long evictionCount;
+        volatile long q0, q1, q2, q3, q4, q5, q6;
+
+        Cell(Thread owner) {
+            super(owner);
+        }
+
+        /**
+         * A terminated thread can no longer write to its cell, so its counts are final.
+         */
+        boolean isDead() {
+            final Thread t = get();
+            return t == null || !t.isAlive();
+        }
+
+        /**
+         * Adds the counts of another cell to this one, which must not be published yet.
+         */
+        void add(Cell c) {
+            hitCount += c.hitCount;
+            missCount += c.missCount;
+            loadSuccessCount += c.loadSuccessCount;
+            loadExceptionCount += c.loadExceptionCount;
+            totalLoadTime += c.totalLoadTime;
+            evictionCount += c.evictionCount;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.StripedFrequencySketch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link KeyedStatsCounter} backed by a {@link Striped64StatsCounter}, with one {@link StripedFrequencySketch} for
+ * hit keys and one for miss keys. Hot keys show up in {@link #topHits}, thrashing keys in {@link #topMisses}. Memory
+ * is fixed by the sketch dimensions, whatever the number of distinct keys.
+ * <p/>
+ * A keyed hit is not as cheap as a plain {@link Striped64StatsCounter#recordHits}; it runs several times slower in
+ * {@code KeyedStatsCounterBenchmark}. On top of the count it hashes the key once and makes five atomic adds to the
+ * sketch, one per row and one to the stripe's addition count, and every sixteenth increment of a key offers it as a
+ * top candidate. That is what finding hot keys in fixed memory without losing increments costs. The unkeyed
+ * {@link #recordHits} and {@link #recordMisses} skip the sketch and cost the same as Striped64.
+ */
+public final class HotKeyStatsCounter implements KeyedStatsCounter {
+
+    private final Striped64StatsCounter counter = new Striped64StatsCounter();
+    private final StripedFrequencySketch<Object> hits;
+    private final StripedFrequencySketch<Object> misses;
+
+    public HotKeyStatsCounter() {
+        this(1024, 256);
+    }
+
+    /**
+     * @param width      counters per sketch row
+     * @param candidates candidate slots kept for the top-K queries
+     */
+    public HotKeyStatsCounter(int width, int candidates) {
+        hits = new StripedFrequencySketch<Object>(width, candidates);
+        misses = new StripedFrequencySketch<Object>(width, candidates);
+    }
+
+    @Override
+    public void recordHit(Object key) {
+        counter.recordHits(1);
+        hits.increment(key);
+    }
+
+    @Override
+    public void recordMiss(Object key) {
+        counter.recordMisses(1);
+        misses.increment(key);
+    }
+
+    @Override
+    public void recordHits(int count) {
+        counter.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        counter.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        counter.recordLoadSuccess(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        counter.recordLoadException(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        counter.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return counter.snapshot();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        counter.snapshotInto(stats);
+    }
+
+    @Override
+    public CacheStats drain() {
+        return counter.drain();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        counter.drainInto(stats);
+    }
+
+    /**
+     * Returns up to {@code k} of the most frequently hit keys with their estimated (aged) hit counts.
+     */
+    public List<Map.Entry<Object, Long>> topHits(int k) {
+        return hits.top(k);
+    }
+
+    /**
+     * Returns up to {@code k} of the most frequently missed keys with their estimated (aged) miss counts.
+     */
+    public List<Map.Entry<Object, Long>> topMisses(int k) {
+        return misses.top(k);
+    }
+
+    public void incrementBy(StatsCounter other) {
+        counter.incrementBy(other);
+    }
+}
@@ -0,0 +1,21 @@
+package com.google.common.cache;
+
+/**
+ * A {@link StatsCounter} that can also be told which key a hit or miss was for, so that hot and thrashing keys can be
+ * identified.
+ */
+public interface KeyedStatsCounter extends StatsCounter {
+    /**
+     * Records a single cache hit for {@code key}. Equivalent to {@code recordHits(1)}, plus tracking of the key.
+     *
+     * @param key the key that was found in the cache
+     */
+    public void recordHit(Object key);
+
+    /**
+     * Records a single cache miss for {@code key}. Equivalent to {@code recordMisses(1)}, plus tracking of the key.
+     *
+     * @param key the key that was not found in the cache
+     */
+    public void recordMiss(Object key);
+}
@@ -0,0 +1,87 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.StripedLogHistogram;
+
+/**
+ * A {@link Striped64StatsCounter} that also records every load time, successful or not, into a
+ * {@link StripedLogHistogram}, so that load penalty percentiles are available alongside the mean.
+ */
+public final class LoadHistogramStatsCounter implements StatsCounter {
+
+    private final Striped64StatsCounter counter = new Striped64StatsCounter();
+    private final StripedLogHistogram loadTimes = new StripedLogHistogram();
+
+    public LoadHistogramStatsCounter() {
+    }
+
+    @Override
+    public void recordHits(int count) {
+        counter.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        counter.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        counter.recordLoadSuccess(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        counter.recordLoadException(loadTime);
+        loadTimes.record(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        counter.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return counter.snapshot();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        counter.snapshotInto(stats);
+    }
+
+    /**
+     * Drains the counts. The load time histogram is left alone and stays cumulative, so {@link #loadTimeSnapshot}
+     * still answers for every load since construction; subtract an earlier {@link #loadTimeSnapshotInto} copy to get
+     * the loads of one interval.
+     */
+    @Override
+    public CacheStats drain() {
+        return counter.drain();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        counter.drainInto(stats);
+    }
+
+    /**
+     * Returns the distribution of load times in nanoseconds, since construction; draining does not reset it.
+     */
+    public StripedLogHistogram.Snapshot loadTimeSnapshot() {
+        return loadTimes.snapshot();
+    }
+
+    /**
+     * Copies the load time bucket counts into {@code into} without allocating, see
+     * {@link StripedLogHistogram#snapshotInto}.
+     */
+    public void loadTimeSnapshotInto(long[] into) {
+        loadTimes.snapshotInto(into);
+    }
+
+    public void incrementBy(StatsCounter other) {
+        counter.incrementBy(other);
+    }
+}
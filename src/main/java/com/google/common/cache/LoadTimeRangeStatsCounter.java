@@ -0,0 +1,111 @@
+package com.google.common.cache;
+
+/**
+ * A {@link Striped64StatsCounter} that also keeps the longest and shortest load time, successful or not, in a
+ * {@link LongMaxUpdater} and a {@link LongMinUpdater}. Each is a Striped64 with its own cell table, so a load costs
+ * two striped updates on top of the ones it already records. Once the extremes settle most of those are plain reads
+ * that find nothing to update, but under contention the two extra tables still grow and take their own cache lines.
+ * <p/>
+ * For the worst case per reporting interval, read {@link #maxLoadTimeThenReset()} once per interval.
+ */
+public final class LoadTimeRangeStatsCounter implements StatsCounter {
+
+    private final Striped64StatsCounter counter = new Striped64StatsCounter();
+    private final LongMaxUpdater maxLoadTime = new LongMaxUpdater();
+    private final LongMinUpdater minLoadTime = new LongMinUpdater();
+
+    public LoadTimeRangeStatsCounter() {
+    }
+
+    @Override
+    public void recordHits(int count) {
+        counter.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        counter.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        counter.recordLoadSuccess(loadTime);
+        maxLoadTime.update(loadTime);
+        minLoadTime.update(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        counter.recordLoadException(loadTime);
+        maxLoadTime.update(loadTime);
+        minLoadTime.update(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        counter.recordEviction();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return counter.snapshot();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        counter.snapshotInto(stats);
+    }
+
+    @Override
+    public CacheStats drain() {
+        return counter.drain();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        counter.drainInto(stats);
+    }
+
+    /**
+     * Returns the longest load time in nanoseconds, or {@link Long#MIN_VALUE} if no load has been recorded.
+     */
+    public long maxLoadTime() {
+        return maxLoadTime.max();
+    }
+
+    /**
+     * Returns the shortest load time in nanoseconds, or {@link Long#MAX_VALUE} if no load has been recorded.
+     */
+    public long minLoadTime() {
+        return minLoadTime.min();
+    }
+
+    /**
+     * Returns the longest load time since the previous call, as {@link #maxLoadTime()}, and starts a new interval.
+     * A load recorded concurrently with the call lands in either interval, never in neither.
+     */
+    public long maxLoadTimeThenReset() {
+        return maxLoadTime.maxThenReset();
+    }
+
+    /**
+     * Returns the shortest load time since the previous call, as {@link #minLoadTime()}, and starts a new interval.
+     * A load recorded concurrently with the call lands in either interval, never in neither.
+     */
+    public long minLoadTimeThenReset() {
+        return minLoadTime.minThenReset();
+    }
+
+    /**
+     * Increments all counters by the values in {@code other}, and widens the load time range by other's if it is
+     * also a LoadTimeRangeStatsCounter.
+     */
+    public void incrementBy(StatsCounter other) {
+        counter.incrementBy(other);
+        if (other instanceof LoadTimeRangeStatsCounter) {
+            final LoadTimeRangeStatsCounter o = (LoadTimeRangeStatsCounter) other;
+            maxLoadTime.update(o.maxLoadTime());
+            minLoadTime.update(o.minLoadTime());
+        }
+    }
+}
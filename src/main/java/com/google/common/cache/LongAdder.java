@@ -124,26 +124,24 @@ final class LongAdder extends Striped64 implements Serializable {
 
     /**
      * Equivalent in effect to {@link #sum} followed by {@link
-     * #reset}. This method may apply for example during quiescent
-     * points between multithreaded computations.  If there are
-     * updates concurrent with this method, the returned value is
-     * <em>not</em> guaranteed to be the final value occurring before
-     * the reset.
+     * #reset}, except that the base and each cell are swapped to zero
+     * atomically, so that no update is lost: an update concurrent
+     * with this method is included either in the returned value or
+     * in the sum after the reset, never both. This makes it suitable
+     * for draining the counts of successive intervals while updates
+     * continue.
      *
      * @return the sum
      */
     public long sumThenReset() {
-        long sum = base;
+        long sum = getAndSetBase(0L);
         Cell[] as = cells;
-        base = 0L;
         if (as != null) {
             int n = as.length;
             for (int i = 0; i < n; ++i) {
                 Cell a = as[i];
-                if (a != null) {
-                    sum += a.value;
-                    a.value = 0L;
-                }
+                if (a != null)
+                    sum += a.getAndSet(0L);
             }
         }
         return sum;
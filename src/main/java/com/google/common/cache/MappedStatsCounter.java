@@ -0,0 +1,277 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.Probe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A striped counter whose cells live off heap in a memory-mapped file instead of on the Java heap, so another process
+ * can map the same file and read live counts with {@link #read(File)} without any copying or coordination with this
+ * JVM. A JVM that opens an existing file carries on from the counts already in it.
+ * <p/>
+ * The file is a 128 byte header followed by one 128 byte stripe per processor (rounded up to a power of two), each
+ * stripe holding the six counts as little endian longs in CacheStats order. The header holds {@link #MAGIC}, the
+ * layout version and the number of stripes, and the magic is written last, so a reader that sees it sees the layout.
+ * <p/>
+ * Cells are updated by CAS through a byte buffer view {@link VarHandle}. Which stripe a thread updates is private to
+ * this JVM, so it is kept on heap rather than in the file: a table of probes, indexed by the thread's identity hash,
+ * remembers the stripe a thread moved to after a failed CAS, the same scheme the BoundedStripedLongAdder uses.
+ */
+public final class MappedStatsCounter implements StatsCounter {
+
+    public static final long MAGIC = 0x5354415453434e54L; // "STATSCNT"
+    public static final int VERSION = 1;
+
+    private static final int HEADER = 128;
+    private static final int STRIDE = 128;
+
+    private static final int HIT = 0;
+    private static final int MISS = 8;
+    private static final int LOAD_SUCCESS = 16;
+    private static final int LOAD_EXCEPTION = 24;
+    private static final int TOTAL_LOAD_TIME = 32;
+    private static final int EVICTION = 40;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final MappedByteBuffer buffer;
+    private final int mask;
+
+    /**
+     * Saved probes, zero until the slot first sees contention.
+     */
+    private final AtomicIntegerArray probes;
+
+    /**
+     * Constructs an instance backed by a temporary file that is deleted as soon as it is mapped (on exit, where the
+     * platform cannot delete a mapped file), so no other process can read it. The mapping, and with it the file's
+     * storage, is released when the counter is garbage collected.
+     */
+    public MappedStatsCounter() {
+        this(tempFile(), true);
+    }
+
+    /**
+     * Maps the given file, creating and laying it out if it is missing or empty. If it already holds counters,
+     * counting resumes from its contents and the stripe count recorded in it.
+     *
+     * @throws IllegalArgumentException if the file has other contents
+     */
+    public MappedStatsCounter(File file) {
+        this(file, false);
+    }
+
+    private MappedStatsCounter(File file, boolean temporary) {
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                int stripes = existingStripes(raf.getChannel());
+                final boolean fresh = stripes == 0;
+                if (fresh && raf.length() != 0) {
+                    throw new IllegalArgumentException("Not a MappedStatsCounter file: " + file);
+                }
+                if (fresh) {
+                    stripes = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+                }
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size(stripes));
+                mask = stripes - 1;
+                probes = new AtomicIntegerArray(stripes << 2);
+                if (fresh) {
+                    for (int i = HEADER; i < size(stripes); i += 8) {
+                        LONGS.set(buffer, i, 0L);
+                    }
+                    INTS.set(buffer, 8, VERSION);
+                    INTS.set(buffer, 12, stripes);
+                    LONGS.setRelease(buffer, 0, MAGIC);
+                }
+            } finally {
+                // The mapping stays valid after the channel is closed, and after the file is deleted where the platform
+                // allows deleting a mapped file.
+                raf.close();
+                if (temporary && !file.delete()) file.deleteOnExit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the counts held in a file written by a MappedStatsCounter, possibly in another process, as they are at
+     * the time of the call.
+     *
+     * @throws IllegalArgumentException if the file does not hold counters
+     */
+    public static CacheStats read(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final int stripes = existingStripes(raf.getChannel());
+            if (stripes == 0) throw new IllegalArgumentException("Not a MappedStatsCounter file: " + file);
+            final MutableCacheStats stats = new MutableCacheStats();
+            sumInto(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size(stripes)), stripes, stats);
+            return stats.toCacheStats();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Forces the counts out to the storage device, for readers that open the file after a crash rather than while
+     * this JVM is running. Live readers see updates without it.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void recordHits(int count) {
+        add(HIT, count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        add(MISS, count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        final int stripe = add(LOAD_SUCCESS, 1);
+        addAt(stripe, TOTAL_LOAD_TIME, loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        final int stripe = add(LOAD_EXCEPTION, 1);
+        addAt(stripe, TOTAL_LOAD_TIME, loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        add(EVICTION, 1);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        snapshotInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        sumInto(buffer, mask + 1, stats);
+    }
+
+    /**
+     * Returns the counts and resets them, swapping each cell to zero atomically. Readers of the file, in this process
+     * or another, see the counts since the last drain.
+     */
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        long hit = 0, miss = 0, loadSuccess = 0, loadException = 0, totalLoadTime = 0, eviction = 0;
+        for (int s = 0; s <= mask; s++) {
+            final int stripe = HEADER + s * STRIDE;
+            hit += (long) LONGS.getAndSet(buffer, stripe + HIT, 0L);
+            miss += (long) LONGS.getAndSet(buffer, stripe + MISS, 0L);
+            loadSuccess += (long) LONGS.getAndSet(buffer, stripe + LOAD_SUCCESS, 0L);
+            loadException += (long) LONGS.getAndSet(buffer, stripe + LOAD_EXCEPTION, 0L);
+            totalLoadTime += (long) LONGS.getAndSet(buffer, stripe + TOTAL_LOAD_TIME, 0L);
+            eviction += (long) LONGS.getAndSet(buffer, stripe + EVICTION, 0L);
+        }
+        stats.set(hit, miss, loadSuccess, loadException, totalLoadTime, eviction);
+    }
+
+    /**
+     * Increments all counters by the values in {@code other}.
+     */
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        add(HIT, otherStats.hitCount());
+        add(MISS, otherStats.missCount());
+        add(LOAD_SUCCESS, otherStats.loadSuccessCount());
+        add(LOAD_EXCEPTION, otherStats.loadExceptionCount());
+        add(TOTAL_LOAD_TIME, otherStats.totalLoadTime());
+        add(EVICTION, otherStats.evictionCount());
+    }
+
+    /**
+     * Adds to the field in the current thread's stripe, returning the offset of the stripe that took the update so
+     * that a second field of the same call can go to the same line.
+     */
+    private int add(int field, long v) {
+        final int id = System.identityHashCode(Thread.currentThread());
+        final int saved = id & (probes.length() - 1);
+        int h = probes.get(saved);
+        if (h == 0) h = (id == 0) ? 1 : id; // Avoid zero to allow xorShift rehash
+        int stripe = HEADER + (h & mask) * STRIDE;
+        long cur = (long) LONGS.getVolatile(buffer, stripe + field);
+        if (LONGS.compareAndSet(buffer, stripe + field, cur, cur + v)) return stripe;
+        for (; ; ) {
+            h = Probe.rehash(h);
+            stripe = HEADER + (h & mask) * STRIDE;
+            cur = (long) LONGS.getVolatile(buffer, stripe + field);
+            if (LONGS.compareAndSet(buffer, stripe + field, cur, cur + v)) break;
+        }
+        probes.lazySet(saved, h);
+        return stripe;
+    }
+
+    private void addAt(int stripe, int field, long v) {
+        LONGS.getAndAdd(buffer, stripe + field, v);
+    }
+
+    private static void sumInto(ByteBuffer buffer, int stripes, MutableCacheStats stats) {
+        long hit = 0, miss = 0, loadSuccess = 0, loadException = 0, totalLoadTime = 0, eviction = 0;
+        for (int s = 0; s < stripes; s++) {
+            final int stripe = HEADER + s * STRIDE;
+            hit += (long) LONGS.getVolatile(buffer, stripe + HIT);
+            miss += (long) LONGS.getVolatile(buffer, stripe + MISS);
+            loadSuccess += (long) LONGS.getVolatile(buffer, stripe + LOAD_SUCCESS);
+            loadException += (long) LONGS.getVolatile(buffer, stripe + LOAD_EXCEPTION);
+            totalLoadTime += (long) LONGS.getVolatile(buffer, stripe + TOTAL_LOAD_TIME);
+            eviction += (long) LONGS.getVolatile(buffer, stripe + EVICTION);
+        }
+        stats.set(hit, miss, loadSuccess, loadException, totalLoadTime, eviction);
+    }
+
+    /**
+     * Returns the stripe count recorded in the file's header, or 0 if the file does not hold a valid layout.
+     */
+    private static int existingStripes(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER) return 0;
+        final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        if ((long) LONGS.getAcquire(header, 0) != MAGIC || (int) INTS.get(header, 8) != VERSION) return 0;
+        final int stripes = (int) INTS.get(header, 12);
+        if (stripes <= 0 || (stripes & (stripes - 1)) != 0 || channel.size() < size(stripes)) return 0;
+        return stripes;
+    }
+
+    private static int size(int stripes) {
+        return HEADER + stripes * STRIDE;
+    }
+
+    private static File tempFile() {
+        try {
+            return File.createTempFile("stats", ".counters");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
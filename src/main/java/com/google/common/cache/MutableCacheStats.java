@@ -0,0 +1,74 @@
+package com.google.common.cache;
+
+/**
+ * A reusable, caller-owned holder for the six values of a {@link CacheStats}. It is filled by
+ * {@link StatsCounter#snapshotInto} so that code polling many counters can read them without allocating.
+ * Instances are not thread-safe.
+ */
+public final class MutableCacheStats {
+
+    private long hitCount;
+    private long missCount;
+    private long loadSuccessCount;
+    private long loadExceptionCount;
+    private long totalLoadTime;
+    private long evictionCount;
+
+    public MutableCacheStats() {
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadExceptionCount() {
+        return loadExceptionCount;
+    }
+
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Overwrites all six values.
+     */
+    public void set(long hitCount, long missCount, long loadSuccessCount, long loadExceptionCount,
+                    long totalLoadTime, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadExceptionCount = loadExceptionCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * Returns an immutable copy of the current values.
+     */
+    public CacheStats toCacheStats() {
+        return new CacheStats(
+                hitCount,
+                missCount,
+                loadSuccessCount,
+                loadExceptionCount,
+                totalLoadTime,
+                evictionCount);
+    }
+
+    @Override
+    public String toString() {
+        return toCacheStats().toString();
+    }
+}
@@ -0,0 +1,95 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.PaddedStripedAtomicLongAdder;
+
+public final class PaddedStripedAtomicStatsCounter implements StatsCounter {
+
+
+    private final PaddedStripedAtomicLongAdder hitCount = new PaddedStripedAtomicLongAdder();
+    private final PaddedStripedAtomicLongAdder missCount = new PaddedStripedAtomicLongAdder();
+    private final PaddedStripedAtomicLongAdder loadSuccessCount = new PaddedStripedAtomicLongAdder();
+    private final PaddedStripedAtomicLongAdder loadExceptionCount = new PaddedStripedAtomicLongAdder();
+    private final PaddedStripedAtomicLongAdder totalLoadTime = new PaddedStripedAtomicLongAdder();
+    private final PaddedStripedAtomicLongAdder evictionCount = new PaddedStripedAtomicLongAdder();
+
+    public PaddedStripedAtomicStatsCounter() {
+    }
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.add(1);
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        loadExceptionCount.add(1);
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        evictionCount.add(1);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sumThenReset(),
+                missCount.sumThenReset(),
+                loadSuccessCount.sumThenReset(),
+                loadExceptionCount.sumThenReset(),
+                totalLoadTime.sumThenReset(),
+                evictionCount.sumThenReset());
+    }
+
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        hitCount.add(otherStats.hitCount());
+        missCount.add(otherStats.missCount());
+        loadSuccessCount.add(otherStats.loadSuccessCount());
+        loadExceptionCount.add(otherStats.loadExceptionCount());
+        totalLoadTime.add(otherStats.totalLoadTime());
+        evictionCount.add(otherStats.evictionCount());
+    }
+}
+
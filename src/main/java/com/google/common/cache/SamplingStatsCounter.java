@@ -0,0 +1,194 @@
+package com.google.common.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link StatsCounter} that records only one in {@code rate} calls to {@link #recordHits} and {@link #recordMisses},
+ * chosen with {@link ThreadLocalRandom}, and scales them back up in {@link #snapshot}. Loads and evictions are always
+ * recorded exactly. The unsampled hot path is one random number and a branch.
+ * <p/>
+ * Each sampled call adds its count, and the square of its count, to Striped64 {@link LongAdder}s. The estimate of the
+ * total is the sampled sum times {@code rate}, which is unbiased. Its variance is estimated as
+ * {@code (rate - 1) * rate * sum(count^2)}, which gives the bounds returned by {@link #hitCountEstimate} and
+ * {@link #missCountEstimate}.
+ */
+public final class SamplingStatsCounter implements StatsCounter {
+
+    private final LongAdder sampledHits = new LongAdder();
+    private final LongAdder sampledHitSquares = new LongAdder();
+    private final LongAdder sampledMisses = new LongAdder();
+    private final LongAdder sampledMissSquares = new LongAdder();
+    private final LongAdder mergedHits = new LongAdder();
+    private final LongAdder mergedMisses = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadExceptionCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final int rate;
+
+    /**
+     * Constructs an instance sampling one in 64 hit and miss calls.
+     */
+    public SamplingStatsCounter() {
+        this(64);
+    }
+
+    /**
+     * @param rate one in how many hit and miss calls to record; 1 records every call
+     */
+    public SamplingStatsCounter(int rate) {
+        if (rate < 1) throw new IllegalArgumentException("rate must be positive");
+        this.rate = rate;
+    }
+
+    @Override
+    public void recordHits(int count) {
+        if (ThreadLocalRandom.current().nextInt(rate) == 0) {
+            sampledHits.add(count);
+            sampledHitSquares.add((long) count * count);
+        }
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        if (ThreadLocalRandom.current().nextInt(rate) == 0) {
+            sampledMisses.add(count);
+            sampledMissSquares.add((long) count * count);
+        }
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        loadExceptionCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    /**
+     * Returns the estimated hit and miss counts together with the exact load and eviction counts.
+     */
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(
+                sampledHits.sum() * rate + mergedHits.sum(),
+                sampledMisses.sum() * rate + mergedMisses.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                sampledHits.sum() * rate + mergedHits.sum(),
+                sampledMisses.sum() * rate + mergedMisses.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    /**
+     * Returns the estimated hit and miss counts since the previous drain together with the exact load and eviction
+     * counts, and starts a new interval. The estimates' sums of squares are reset with them, so that
+     * {@link #hitCountEstimate} and {@link #missCountEstimate} cover the new interval too.
+     */
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        sampledHitSquares.sumThenReset();
+        sampledMissSquares.sumThenReset();
+        stats.set(
+                sampledHits.sumThenReset() * rate + mergedHits.sumThenReset(),
+                sampledMisses.sumThenReset() * rate + mergedMisses.sumThenReset(),
+                loadSuccessCount.sumThenReset(),
+                loadExceptionCount.sumThenReset(),
+                totalLoadTime.sumThenReset(),
+                evictionCount.sumThenReset());
+    }
+
+    /**
+     * Returns the estimated hit count with a 95% confidence interval.
+     */
+    public Estimate hitCountEstimate() {
+        return estimate(sampledHits.sum(), sampledHitSquares.sum(), mergedHits.sum());
+    }
+
+    /**
+     * Returns the estimated miss count with a 95% confidence interval.
+     */
+    public Estimate missCountEstimate() {
+        return estimate(sampledMisses.sum(), sampledMissSquares.sum(), mergedMisses.sum());
+    }
+
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        // Counts merged from elsewhere are taken as exact and add no variance.
+        mergedHits.add(otherStats.hitCount());
+        mergedMisses.add(otherStats.missCount());
+        loadSuccessCount.add(otherStats.loadSuccessCount());
+        loadExceptionCount.add(otherStats.loadExceptionCount());
+        totalLoadTime.add(otherStats.totalLoadTime());
+        evictionCount.add(otherStats.evictionCount());
+    }
+
+    private Estimate estimate(long sum, long squares, long exact) {
+        final double value = (double) sum * rate + exact;
+        final double stddev = Math.sqrt((double) (rate - 1) * rate * squares);
+        return new Estimate(value, Math.max(0, value - 1.96 * stddev), value + 1.96 * stddev);
+    }
+
+    /**
+     * An estimated count and its 95% confidence interval.
+     */
+    public static final class Estimate {
+        private final double value;
+        private final double lower;
+        private final double upper;
+
+        Estimate(double value, double lower, double upper) {
+            this.value = value;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public double value() {
+            return value;
+        }
+
+        public double lower() {
+            return lower;
+        }
+
+        public double upper() {
+            return upper;
+        }
+
+        public boolean contains(long actual) {
+            return actual >= lower && actual <= upper;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f [%.0f, %.0f]", value, lower, upper);
+        }
+    }
+}
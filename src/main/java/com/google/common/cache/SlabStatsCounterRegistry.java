@@ -0,0 +1,385 @@
+package com.google.common.cache;
+
+import com.hyperscalelogic.util.concurrent.Probe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A registry of named, labelled {@link StatsCounter}s whose counts all live in one shared slab of striped longs,
+ * instead of six LongAdders per counter each growing its own table of padded cells.
+ * <p/>
+ * The slab holds one stripe per processor (rounded up to a power of two), and each stripe holds a block of eight longs
+ * per counter: the six counts and two spare. The first stripe's block uses one of the spares to keep the total
+ * drained from the counter, so that draining does not make an active counter look idle to {@link #sweep()}. Stripes
+ * are laid out one after another, padded apart, so threads on different stripes never share a line, while a counter
+ * costs only 64 bytes per stripe. Within a stripe the blocks are not line aligned, as an AtomicLongArray's elements
+ * are only 8 byte aligned, so a block usually straddles two lines and shares them with its neighbours. Two threads on
+ * the same stripe recording into adjacent counters can therefore falsely share; keeping each block on lines of its own
+ * would double the slab. As in the BoundedStripedLongAdder, a thread's stripe comes from a probe saved in a small
+ * table keyed by its identity hash, and a failed CAS rehashes the probe and saves it, so a thread that collided once
+ * keeps to its new stripe and a record costs one CAS, as it does for the striped adders.
+ * <p/>
+ * The registry holds at most {@code capacity} counters. When it is full, a new label set takes the place of the
+ * coldest registered one: the one whose counts have not changed over the most calls to {@link #sweep()}. Idleness is
+ * only ever measured by those calls, so call it on a fixed period, such as once per stats scrape; until a counter has
+ * gone a whole sweep period without a record it is never evicted. If no counter is idle, the new label set is given
+ * the shared {@link #overflow()} counter instead, so memory stays bounded however many label sets are asked for. Up to
+ * {@code capacity} such overflowed label sets are remembered until the next sweep, so asking for them again is a
+ * lookup rather than another pass over the registry. An evicted counter carries on working but records into, and
+ * reports, the overflow counter. Its slot is cleared for reuse at once, so a record already in flight when it is
+ * evicted may be counted against the new owner. A counter is only evicted after going quiet, which makes such races
+ * rare.
+ */
+public final class SlabStatsCounterRegistry {
+
+    private static final int STRIPES = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    private static final int PROBES = STRIPES << 2;
+
+    /**
+     * Longs per counter per stripe, 64 bytes, as a shift.
+     */
+    private static final int SLOT_SHIFT = 3;
+
+    /**
+     * Longs of padding before each stripe, 128 bytes.
+     */
+    private static final int PAD = 16;
+
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+    private static final int LOAD_SUCCESS = 2;
+    private static final int LOAD_EXCEPTION = 3;
+    private static final int TOTAL_LOAD_TIME = 4;
+    private static final int EVICTION = 5;
+    private static final int DRAINED = 6;
+
+    private static final int OVERFLOW = 0;
+
+    private final int capacity;
+    private final int stripeLongs;
+    private final AtomicLongArray cells;
+
+    /**
+     * Saved probes, zero until the slot first sees contention.
+     */
+    private final AtomicIntegerArray probes = new AtomicIntegerArray(PROBES);
+
+    private final ConcurrentHashMap<List<String>, Counter> counters = new ConcurrentHashMap<List<String>, Counter>();
+
+    /**
+     * Label sets given the overflow counter since the last sweep, at most capacity of them.
+     */
+    private final Set<List<String>> overflowed =
+            Collections.newSetFromMap(new ConcurrentHashMap<List<String>, Boolean>());
+
+    // Guarded by this.
+    private final Counter[] owners;
+    private final long[] lastActivity;
+    private final int[] idleSweeps;
+    private int free;
+
+    private final Counter overflow;
+
+    /**
+     * @param capacity the most counters registered at any one time, not counting the overflow counter
+     */
+    public SlabStatsCounterRegistry(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.stripeLongs = PAD + ((capacity + 1) << SLOT_SHIFT);
+        this.cells = new AtomicLongArray(STRIPES * stripeLongs + PAD);
+        this.owners = new Counter[capacity + 1];
+        this.lastActivity = new long[capacity + 1];
+        this.idleSweeps = new int[capacity + 1];
+        this.free = 1;
+        this.overflow = new Counter(Collections.singletonList("overflow"), OVERFLOW);
+        owners[OVERFLOW] = overflow;
+    }
+
+    /**
+     * Returns the counter for the given name and label values, registering it if need be. The returned counter may be
+     * the overflow counter when the registry is full. Look counters up once and keep them, rather than calling this
+     * on every record.
+     */
+    public StatsCounter counter(String name, String... labels) {
+        final List<String> key = key(name, labels);
+        final Counter counter = counters.get(key);
+        if (counter != null) return counter;
+        return overflowed.contains(key) ? overflow : register(key);
+    }
+
+    /**
+     * Returns the counter that label sets over capacity, and evicted counters, record into.
+     */
+    public StatsCounter overflow() {
+        return overflow;
+    }
+
+    /**
+     * Returns the number of registered counters, not counting the overflow counter.
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the size of the slab in bytes.
+     */
+    public long slabBytes() {
+        return 8L * cells.length();
+    }
+
+    /**
+     * Returns the name and label values of every registered counter, keyed as they were given to
+     * {@link #counter(String, String...)}, the name first.
+     */
+    public List<List<String>> keys() {
+        return new ArrayList<List<String>>(counters.keySet());
+    }
+
+    /**
+     * Ages every registered counter whose counts have not changed since the previous sweep, making the longest idle
+     * the first to be evicted. Call it periodically, for instance once per stats scrape, so that idleness is measured
+     * over a meaningful interval.
+     */
+    public synchronized void sweep() {
+        overflowed.clear();
+        for (int slot = 1; slot < free; slot++) {
+            final long activity = activity(slot);
+            if (activity == lastActivity[slot]) {
+                idleSweeps[slot]++;
+            } else {
+                lastActivity[slot] = activity;
+                idleSweeps[slot] = 0;
+            }
+        }
+    }
+
+    private synchronized Counter register(List<String> key) {
+        Counter counter = counters.get(key);
+        if (counter != null) return counter;
+
+        int slot;
+        if (free <= capacity) {
+            slot = free++;
+        } else {
+            slot = coldest();
+            if (slot == OVERFLOW) {
+                if (overflowed.size() < capacity) overflowed.add(key);
+                return overflow;
+            }
+            final Counter evicted = owners[slot];
+            counters.remove(evicted.key);
+            evicted.slot = OVERFLOW;
+            clear(slot);
+        }
+
+        counter = new Counter(key, slot);
+        owners[slot] = counter;
+        lastActivity[slot] = 0;
+        idleSweeps[slot] = 0;
+        counters.put(key, counter);
+        return counter;
+    }
+
+    /**
+     * Returns the slot idle over the most sweeps, or the overflow slot if none has been idle over any.
+     */
+    private int coldest() {
+        int coldest = OVERFLOW;
+        int idlest = 0;
+        for (int slot = 1; slot <= capacity; slot++) {
+            if (idleSweeps[slot] > idlest) {
+                idlest = idleSweeps[slot];
+                coldest = slot;
+            }
+        }
+        return coldest;
+    }
+
+    private long activity(int slot) {
+        long activity = cells.get(index(0, slot) + DRAINED);
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int base = index(stripe, slot);
+            for (int field = HIT; field <= EVICTION; field++) {
+                activity += cells.get(base + field);
+            }
+        }
+        return activity;
+    }
+
+    private void clear(int slot) {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int base = index(stripe, slot);
+            for (int field = HIT; field <= DRAINED; field++) {
+                cells.set(base + field, 0);
+            }
+        }
+    }
+
+    private int index(int stripe, int slot) {
+        return PAD + stripe * stripeLongs + (slot << SLOT_SHIFT);
+    }
+
+    /**
+     * Adds to the field of the slot in the current thread's stripe, returning the index of the slot's block in that
+     * stripe so that a second field of the same call can go to the same line.
+     */
+    private int add(int slot, int field, long v) {
+        final int id = System.identityHashCode(Thread.currentThread());
+        final int saved = id & (PROBES - 1);
+        int h = probes.get(saved);
+        if (h == 0) h = (id == 0) ? 1 : id; // Avoid zero to allow xorShift rehash
+        int base = index(h & (STRIPES - 1), slot);
+        long cur = cells.get(base + field);
+        if (cells.compareAndSet(base + field, cur, cur + v)) return base;
+        for (; ; ) {
+            h = Probe.rehash(h);
+            base = index(h & (STRIPES - 1), slot);
+            cur = cells.get(base + field);
+            if (cells.compareAndSet(base + field, cur, cur + v)) break;
+        }
+        probes.lazySet(saved, h);
+        return base;
+    }
+
+    private void snapshotInto(int slot, MutableCacheStats stats) {
+        long hit = 0, miss = 0, loadSuccess = 0, loadException = 0, totalLoadTime = 0, eviction = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int base = index(stripe, slot);
+            hit += cells.get(base + HIT);
+            miss += cells.get(base + MISS);
+            loadSuccess += cells.get(base + LOAD_SUCCESS);
+            loadException += cells.get(base + LOAD_EXCEPTION);
+            totalLoadTime += cells.get(base + TOTAL_LOAD_TIME);
+            eviction += cells.get(base + EVICTION);
+        }
+        stats.set(hit, miss, loadSuccess, loadException, totalLoadTime, eviction);
+    }
+
+    /**
+     * Swaps the counts in the counter's slot to zero and returns them. Holding the lock keeps the slot from being
+     * reassigned under the drain, and keeps sweeps from seeing the counts gone before they reach the drained total.
+     */
+    private synchronized void drainInto(Counter counter, MutableCacheStats stats) {
+        final int slot = counter.slot;
+        long hit = 0, miss = 0, loadSuccess = 0, loadException = 0, totalLoadTime = 0, eviction = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final int base = index(stripe, slot);
+            hit += cells.getAndSet(base + HIT, 0);
+            miss += cells.getAndSet(base + MISS, 0);
+            loadSuccess += cells.getAndSet(base + LOAD_SUCCESS, 0);
+            loadException += cells.getAndSet(base + LOAD_EXCEPTION, 0);
+            totalLoadTime += cells.getAndSet(base + TOTAL_LOAD_TIME, 0);
+            eviction += cells.getAndSet(base + EVICTION, 0);
+        }
+        cells.getAndAdd(index(0, slot) + DRAINED, hit + miss + loadSuccess + loadException + totalLoadTime + eviction);
+        stats.set(hit, miss, loadSuccess, loadException, totalLoadTime, eviction);
+    }
+
+    private static List<String> key(String name, String... labels) {
+        if (name == null) throw new NullPointerException("name");
+        final String[] key = new String[labels.length + 1];
+        key[0] = name;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == null) throw new NullPointerException("label");
+            key[i + 1] = labels[i];
+        }
+        return Collections.unmodifiableList(Arrays.asList(key));
+    }
+
+    /**
+     * A counter whose counts live in one slot of the registry's slab.
+     */
+    private final class Counter implements StatsCounter {
+        final List<String> key;
+        volatile int slot;
+
+        Counter(List<String> key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+
+        @Override
+        public void recordHits(int count) {
+            add(slot, HIT, count);
+        }
+
+        @Override
+        public void recordMisses(int count) {
+            add(slot, MISS, count);
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+            final int base = add(slot, LOAD_SUCCESS, 1);
+            cells.getAndAdd(base + TOTAL_LOAD_TIME, loadTime);
+        }
+
+        @Override
+        public void recordLoadException(long loadTime) {
+            final int base = add(slot, LOAD_EXCEPTION, 1);
+            cells.getAndAdd(base + TOTAL_LOAD_TIME, loadTime);
+        }
+
+        @Override
+        public void recordEviction() {
+            add(slot, EVICTION, 1);
+        }
+
+        @Override
+        public CacheStats snapshot() {
+            final MutableCacheStats stats = new MutableCacheStats();
+            snapshotInto(stats);
+            return stats.toCacheStats();
+        }
+
+        @Override
+        public void snapshotInto(MutableCacheStats stats) {
+            SlabStatsCounterRegistry.this.snapshotInto(slot, stats);
+        }
+
+        @Override
+        public CacheStats drain() {
+            final MutableCacheStats stats = new MutableCacheStats();
+            drainInto(stats);
+            return stats.toCacheStats();
+        }
+
+        @Override
+        public void drainInto(MutableCacheStats stats) {
+            SlabStatsCounterRegistry.this.drainInto(this, stats);
+        }
+
+        /**
+         * Increments all counters by the values in {@code other}.
+         */
+        public void incrementBy(StatsCounter other) {
+            CacheStats otherStats = other.snapshot();
+            final int slot = this.slot;
+            add(slot, HIT, otherStats.hitCount());
+            add(slot, MISS, otherStats.missCount());
+            add(slot, LOAD_SUCCESS, otherStats.loadSuccessCount());
+            add(slot, LOAD_EXCEPTION, otherStats.loadExceptionCount());
+            add(slot, TOTAL_LOAD_TIME, otherStats.totalLoadTime());
+            add(slot, EVICTION, otherStats.evictionCount());
+        }
+
+        @Override
+        public String toString() {
+            return key.toString();
+        }
+    }
+}
@@ -60,4 +60,27 @@ public interface StatsCounter {
      * it may be interleaved with update operations.
      */
     public CacheStats snapshot();
+
+    /**
+     * Copies this counter's values into {@code stats} without allocating. Like {@link #snapshot}, this may be an
+     * inconsistent view, as it may be interleaved with update operations.
+     *
+     * @param stats the caller-owned holder to overwrite
+     */
+    public void snapshotInto(MutableCacheStats stats);
+
+    /**
+     * Returns the values recorded since the previous drain, or since construction, and resets them, so that a
+     * reporter gets each interval's deltas directly. A record that races with the drain is counted in either this
+     * interval or the next, never lost and never counted twice. As with {@link #snapshot}, the six values are not
+     * drained at one instant, so a call recorded mid-drain may have some of its values in each interval.
+     */
+    public CacheStats drain();
+
+    /**
+     * Like {@link #drain}, but copies the deltas into {@code stats} without allocating.
+     *
+     * @param stats the caller-owned holder to overwrite
+     */
+    public void drainInto(MutableCacheStats stats);
 }
\ No newline at end of file
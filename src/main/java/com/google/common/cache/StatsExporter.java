@@ -0,0 +1,257 @@
+package com.google.common.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Serves the counts of every registered {@link StatsCounter} in the Prometheus text exposition format, one sample per
+ * count labelled with the counter's name:
+ * <pre>
+ * guava_cache_hits_total{cache="users"} 1027
+ * </pre>
+ * Total load time is exported in seconds, the Prometheus base unit, as an exact decimal of the recorded nanoseconds.
+ * <p/>
+ * A scrape allocates nothing of its own once warm. Each counter is read with {@link StatsCounter#snapshotInto} into a
+ * holder kept with its registration, names are encoded once when registered, and the numbers are formatted straight
+ * into a byte buffer that is reused from scrape to scrape. Scrapes are serialized, which also makes them consistent
+ * across families: every sample of one counter comes from the same snapshot.
+ * <p/>
+ * The body is formatted in full before the response starts, so it is sent with a Content-Length in a single write. The
+ * JDK server still flushes the response headers on their own, and with Nagle's algorithm the body then waits for the
+ * client's delayed ACK of the headers, about 40ms on Linux. {@link #start} therefore turns on TCP_NODELAY through
+ * {@code sun.net.httpserver.nodelay}, unless it is set already; the JDK reads it once, when the first server of the
+ * JVM is created.
+ */
+public final class StatsExporter implements HttpHandler {
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int LOAD_SUCCESS = 2;
+    private static final int LOAD_EXCEPTION = 3;
+    private static final int LOAD_TIME = 4;
+    private static final int EVICTIONS = 5;
+
+    private static final byte[][] HEADERS = new byte[6][];
+    private static final byte[][] PREFIXES = new byte[6][];
+
+    static {
+        family(HITS, "guava_cache_hits_total", "Cache lookups that returned a cached value.");
+        family(MISSES, "guava_cache_misses_total", "Cache lookups that returned a newly loaded or null value.");
+        family(LOAD_SUCCESS, "guava_cache_load_success_total", "Successful loads of new values.");
+        family(LOAD_EXCEPTION, "guava_cache_load_exception_total", "Loads of new values that threw an exception.");
+        family(LOAD_TIME, "guava_cache_load_duration_seconds_total", "Time spent loading new values, in seconds.");
+        family(EVICTIONS, "guava_cache_evictions_total", "Entries evicted from the cache.");
+    }
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private static final byte[] MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<Entry>();
+
+    private byte[] buf = new byte[4096];
+    private int len;
+
+    private HttpServer server;
+
+    public StatsExporter() {
+    }
+
+    /**
+     * Adds a counter to every subsequent scrape under the given name.
+     *
+     * @throws IllegalArgumentException if a counter is already registered under the name
+     */
+    public synchronized void register(String name, StatsCounter counter) {
+        if (name == null) throw new NullPointerException("name");
+        if (counter == null) throw new NullPointerException("counter");
+        for (Entry e : entries) {
+            if (e.name.equals(name)) throw new IllegalArgumentException("Already registered: " + name);
+        }
+        entries.add(new Entry(name, counter));
+    }
+
+    /**
+     * Removes the counter registered under the given name, returning false if there was none.
+     */
+    public synchronized boolean unregister(String name) {
+        for (Entry e : entries) {
+            if (e.name.equals(name)) return entries.remove(e);
+        }
+        return false;
+    }
+
+    /**
+     * Starts serving {@link #PATH} on the given address, returning the port bound, which is useful when asking for
+     * port 0.
+     */
+    public synchronized int start(InetSocketAddress address) throws IOException {
+        if (server != null) throw new IllegalStateException("Already started");
+        if (System.getProperty(NODELAY) == null) System.setProperty(NODELAY, "true");
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Writes one scrape to the stream, returning the number of bytes written.
+     */
+    public synchronized int writeTo(OutputStream out) throws IOException {
+        final int n = format();
+        out.write(buf, 0, n);
+        return n;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (this) {
+                final int n = format();
+                exchange.sendResponseHeaders(200, n);
+                exchange.getResponseBody().write(buf, 0, n);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private int format() {
+        len = 0;
+        for (Entry e : entries) {
+            e.counter.snapshotInto(e.stats);
+        }
+        for (int family = 0; family < HEADERS.length; family++) {
+            write(HEADERS[family]);
+            for (Entry e : entries) {
+                write(PREFIXES[family]);
+                write(e.label);
+                if (family == LOAD_TIME) {
+                    writeSeconds(e.stats.totalLoadTime());
+                } else {
+                    writeLong(value(e.stats, family));
+                }
+                ensure(1);
+                buf[len++] = '\n';
+            }
+        }
+        return len;
+    }
+
+    private static long value(MutableCacheStats stats, int family) {
+        switch (family) {
+            case HITS:
+                return stats.hitCount();
+            case MISSES:
+                return stats.missCount();
+            case LOAD_SUCCESS:
+                return stats.loadSuccessCount();
+            case LOAD_EXCEPTION:
+                return stats.loadExceptionCount();
+            default:
+                return stats.evictionCount();
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            write(MIN_VALUE);
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[len++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        int p = len + digits;
+        do {
+            buf[--p] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        len += digits;
+    }
+
+    /**
+     * Writes nanoseconds as seconds with up to nine decimals, dropping trailing zeros but keeping one.
+     */
+    private void writeSeconds(long nanos) {
+        if (nanos < 0) {
+            ensure(1);
+            buf[len++] = '-';
+        }
+        final long seconds = Math.abs(nanos / NANOS_PER_SECOND);
+        long fraction = Math.abs(nanos % NANOS_PER_SECOND);
+        writeLong(seconds);
+        ensure(10);
+        buf[len++] = '.';
+        int digits = 9;
+        while (digits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        for (int p = len + digits - 1; p >= len; p--) {
+            buf[p] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        len += digits;
+    }
+
+    private void ensure(int n) {
+        if (len + n > buf.length) {
+            final byte[] grown = new byte[Math.max(buf.length << 1, len + n)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+    }
+
+    private static void family(int family, String metric, String help) {
+        HEADERS[family] = ("# HELP " + metric + " " + help + "\n# TYPE " + metric + " counter\n").getBytes(StandardCharsets.UTF_8);
+        PREFIXES[family] = (metric + "{cache=\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+        final String name;
+        final StatsCounter counter;
+        final MutableCacheStats stats = new MutableCacheStats();
+        /**
+         * The escaped name, closing the label set, ready to be followed by the value.
+         */
+        final byte[] label;
+
+        Entry(String name, StatsCounter counter) {
+            this.name = name;
+            this.counter = counter;
+            final String escaped = name.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            this.label = (escaped + "\"} ").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -99,6 +99,10 @@ abstract class Striped64 extends Number {
             return UNSAFE.compareAndSwapLong(this, valueOffset, cmp, val);
         }
 
+        final long getAndSet(long val) {
+            return UNSAFE.getAndSetLong(this, valueOffset, val);
+        }
+
         // Unsafe mechanics
         private static final sun.misc.Unsafe UNSAFE;
         private static final long valueOffset;
@@ -175,6 +179,13 @@ abstract class Striped64 extends Number {
         return UNSAFE.compareAndSwapLong(this, baseOffset, cmp, val);
     }
 
+    /**
+     * Atomically sets the base field and returns its old value.
+     */
+    final long getAndSetBase(long val) {
+        return UNSAFE.getAndSetLong(this, baseOffset, val);
+    }
+
     /**
      * CASes the busy field from 0 to 1 to acquire lock.
      */
@@ -58,6 +58,35 @@ public final class Striped64StatsCounter implements StatsCounter {
                 evictionCount.sum());
     }
 
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sumThenReset(),
+                missCount.sumThenReset(),
+                loadSuccessCount.sumThenReset(),
+                loadExceptionCount.sumThenReset(),
+                totalLoadTime.sumThenReset(),
+                evictionCount.sumThenReset());
+    }
+
     /**
      * Increments all counters by the values in {@code other}.
      */
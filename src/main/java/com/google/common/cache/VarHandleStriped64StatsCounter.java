@@ -0,0 +1,96 @@
+package com.google.common.cache;
+
+public final class VarHandleStriped64StatsCounter implements StatsCounter {
+    private final VarHandleLongAdder hitCount = new VarHandleLongAdder();
+    private final VarHandleLongAdder missCount = new VarHandleLongAdder();
+    private final VarHandleLongAdder loadSuccessCount = new VarHandleLongAdder();
+    private final VarHandleLongAdder loadExceptionCount = new VarHandleLongAdder();
+    private final VarHandleLongAdder totalLoadTime = new VarHandleLongAdder();
+    private final VarHandleLongAdder evictionCount = new VarHandleLongAdder();
+
+    /**
+     * Constructs an instance with all counts initialized to zero.
+     */
+    public VarHandleStriped64StatsCounter() {
+    }
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        loadExceptionCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadExceptionCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum());
+    }
+
+    @Override
+    public CacheStats drain() {
+        final MutableCacheStats stats = new MutableCacheStats();
+        drainInto(stats);
+        return stats.toCacheStats();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        stats.set(
+                hitCount.sumThenReset(),
+                missCount.sumThenReset(),
+                loadSuccessCount.sumThenReset(),
+                loadExceptionCount.sumThenReset(),
+                totalLoadTime.sumThenReset(),
+                evictionCount.sumThenReset());
+    }
+
+    /**
+     * Increments all counters by the values in {@code other}.
+     */
+    public void incrementBy(StatsCounter other) {
+        CacheStats otherStats = other.snapshot();
+        hitCount.add(otherStats.hitCount());
+        missCount.add(otherStats.missCount());
+        loadSuccessCount.add(otherStats.loadSuccessCount());
+        loadExceptionCount.add(otherStats.loadExceptionCount());
+        totalLoadTime.add(otherStats.totalLoadTime());
+        evictionCount.add(otherStats.evictionCount());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.google.common.cache;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link StatsCounter} that, besides the cumulative counts, keeps a ring of time buckets so it can answer for the
+ * last N seconds without diffing snapshots. Each bucket is a set of Striped64 {@link LongAdder}s.
+ * <p/>
+ * Buckets are rotated lazily by the first writer that sees a slot still holding an older bucket. It installs a fresh
+ * bucket with a CAS, and a writer that loses the race simply uses the winner's bucket, so writers never block.
+ * {@link #snapshot(long, TimeUnit)} sums the buckets that fall inside the requested window, which is
+ * O(buckets). Windows are rounded up to whole buckets.
+ */
+public final class WindowedStatsCounter implements StatsCounter {
+
+    private final Striped64StatsCounter total = new Striped64StatsCounter();
+
+    private final AtomicReferenceArray<Bucket> ring;
+    private final long bucketNanos;
+    private final Ticker ticker;
+
+    /**
+     * Constructs an instance with a 60 second window of one second buckets.
+     */
+    public WindowedStatsCounter() {
+        this(60, 1, TimeUnit.SECONDS, Ticker.systemTicker());
+    }
+
+    public WindowedStatsCounter(int buckets, long bucketDuration, TimeUnit unit, Ticker ticker) {
+        if (buckets < 1) throw new IllegalArgumentException("buckets must be positive");
+        if (bucketDuration < 1) throw new IllegalArgumentException("bucketDuration must be positive");
+        this.ring = new AtomicReferenceArray<Bucket>(buckets);
+        this.bucketNanos = unit.toNanos(bucketDuration);
+        this.ticker = ticker;
+    }
+
+    @Override
+    public void recordHits(int count) {
+        total.recordHits(count);
+        bucket().hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        total.recordMisses(count);
+        bucket().missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        total.recordLoadSuccess(loadTime);
+        final Bucket b = bucket();
+        b.loadSuccessCount.increment();
+        b.totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordLoadException(long loadTime) {
+        total.recordLoadException(loadTime);
+        final Bucket b = bucket();
+        b.loadExceptionCount.increment();
+        b.totalLoadTime.add(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        total.recordEviction();
+        bucket().evictionCount.increment();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return total.snapshot();
+    }
+
+    @Override
+    public void snapshotInto(MutableCacheStats stats) {
+        total.snapshotInto(stats);
+    }
+
+    /**
+     * Drains the cumulative counts. The time buckets are left alone, so {@link #snapshot(long, TimeUnit)} still
+     * answers for the whole window.
+     */
+    @Override
+    public CacheStats drain() {
+        return total.drain();
+    }
+
+    @Override
+    public void drainInto(MutableCacheStats stats) {
+        total.drainInto(stats);
+    }
+
+    /**
+     * Returns the counts recorded during the last {@code duration}, rounded up to whole buckets and capped at the
+     * length of the ring. The current, partially filled bucket is included.
+     */
+    public CacheStats snapshot(long duration, TimeUnit unit) {
+        final MutableCacheStats stats = new MutableCacheStats();
+        snapshotInto(duration, unit, stats);
+        return stats.toCacheStats();
+    }
+
+    /**
+     * As {@link #snapshot(long, TimeUnit)}, filling {@code stats} instead of allocating.
+     */
+    public void snapshotInto(long duration, TimeUnit unit, MutableCacheStats stats) {
+        final long now = Math.floorDiv(ticker.read(), bucketNanos);
+        final long window = Math.min(ring.length(), Math.max(1, (unit.toNanos(duration) + bucketNanos - 1) / bucketNanos));
+
+        long hitCount = 0;
+        long missCount = 0;
+        long loadSuccessCount = 0;
+        long loadExceptionCount = 0;
+        long totalLoadTime = 0;
+        long evictionCount = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            final Bucket b = ring.get(i);
+            if (b != null && b.index > now - window && b.index <= now) {
+                hitCount += b.hitCount.sum();
+                missCount += b.missCount.sum();
+                loadSuccessCount += b.loadSuccessCount.sum();
+                loadExceptionCount += b.loadExceptionCount.sum();
+                totalLoadTime += b.totalLoadTime.sum();
+                evictionCount += b.evictionCount.sum();
+            }
+        }
+        stats.set(
+                hitCount,
+                missCount,
+                loadSuccessCount,
+                loadExceptionCount,
+                totalLoadTime,
+                evictionCount);
+    }
+
+    public void incrementBy(StatsCounter other) {
+        total.incrementBy(other);
+    }
+
+    private Bucket bucket() {
+        final long index = Math.floorDiv(ticker.read(), bucketNanos);
+        final int slot = (int) Math.floorMod(index, (long) ring.length());
+        Bucket b = ring.get(slot);
+        while (b == null || b.index < index) {
+            final Bucket fresh = new Bucket(index);
+            if (ring.compareAndSet(slot, b, fresh)) return fresh;
+            b = ring.get(slot);
+        }
+        // Either current, or a writer with a later clock reading has already rotated the slot.
+        return b;
+    }
+
+    private static final class Bucket {
+        final long index;
+        final LongAdder hitCount = new LongAdder();
+        final LongAdder missCount = new LongAdder();
+        final LongAdder loadSuccessCount = new LongAdder();
+        final LongAdder loadExceptionCount = new LongAdder();
+        final LongAdder totalLoadTime = new LongAdder();
+        final LongAdder evictionCount = new LongAdder();
+
+        Bucket(long index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.hyperscalelogic.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A striped counter whose memory is bounded by the number of processors rather than by the number of threads, so it
+ * stays small when it is updated from millions of short-lived virtual threads.
+ * <p/>
+ * Unlike {@link StripedLocalLongAdder} it keeps no thread-local state, and unlike {@link StripedAtomicLongAdder} it
+ * does not remember a per-thread {@link Probe}. Instead the current thread's identity hash picks one of a fixed table
+ * of shared probes, four per stripe, and that probe picks the stripe. On a failed CAS the probe is rehashed as
+ * {@link Probe} does, another stripe is tried, and the rehashed probe is saved back to the table, so threads that keep
+ * colliding move apart for good rather than retrying from the same stripe on every add. Threads whose identity hashes
+ * share a table slot also share its probe. Stripes are padded to 128 bytes as in {@link PaddedStripedAtomicLongAdder}.
+ */
+public final class BoundedStripedLongAdder {
+
+    private static final int SIZE = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    private static final int SHIFT = 4;
+
+    private static final int PROBES = SIZE << 2;
+
+    private final AtomicLongArray adders = new AtomicLongArray((SIZE + 2) << SHIFT);
+
+    /**
+     * Saved probes, zero until the slot first sees contention.
+     */
+    private final AtomicIntegerArray probes = new AtomicIntegerArray(PROBES);
+
+    public final void add(long v) {
+        final int id = System.identityHashCode(Thread.currentThread());
+        final int slot = id & (PROBES - 1);
+        int h = probes.get(slot);
+        if (h == 0) h = (id == 0) ? 1 : id; // Avoid zero to allow xorShift rehash
+        int i = ((h & (SIZE - 1)) + 1) << SHIFT;
+        long cur = adders.get(i);
+        if (adders.compareAndSet(i, cur, cur + v)) return;
+        for (; ; ) {
+            h = Probe.rehash(h);
+            i = ((h & (SIZE - 1)) + 1) << SHIFT;
+            cur = adders.get(i);
+            if (adders.compareAndSet(i, cur, cur + v)) break;
+        }
+        probes.lazySet(slot, h);
+    }
+
+    public final long sum() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += adders.get((i + 1) << SHIFT);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum and resets it to zero, swapping each stripe to zero atomically so that an add racing with it is
+     * counted either in the value returned or in the next one, never lost.
+     */
+    public final long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += adders.getAndSet((i + 1) << SHIFT, 0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hyperscalelogic.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A variant of {@link StripedAtomicLongAdder} where every stripe sits alone in its own 128 byte block of the backing
+ * array, so stripes never share a cache line (or an adjacent-line prefetch pair) with each other. The number of
+ * stripes is the smallest power of two not less than the number of available processors. Stripes are chosen by a
+ * per-thread {@link Probe} which is rehashed on a failed CAS.
+ */
+public final class PaddedStripedAtomicLongAdder {
+
+    private static final int SIZE = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Stride between stripes in longs, 16 longs being 128 bytes. The array is also offset by one stride so the first
+     * stripe does not share a line with the array header.
+     */
+    private static final int SHIFT = 4;
+
+    private final AtomicLongArray adders = new AtomicLongArray((SIZE + 2) << SHIFT);
+
+    public final void add(long v) {
+        final Probe p = Probe.current();
+        int h = p.code;
+        for (; ; ) {
+            final int i = ((h & (SIZE - 1)) + 1) << SHIFT;
+            final long cur = adders.get(i);
+            if (adders.compareAndSet(i, cur, cur + v)) break;
+            h = Probe.rehash(h);
+        }
+        p.code = h;
+    }
+
+    public final long sum() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += adders.get((i + 1) << SHIFT);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum and resets it to zero, swapping each stripe to zero atomically so that an add racing with it is
+     * counted either in the value returned or in the next one, never lost.
+     */
+    public final long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += adders.getAndSet((i + 1) << SHIFT, 0);
+        }
+        return sum;
+    }
+}
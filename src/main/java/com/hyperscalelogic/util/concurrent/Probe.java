@@ -0,0 +1,53 @@
+package com.hyperscalelogic.util.concurrent;
+
+import java.util.Random;
+
+/**
+ * Holder for the per-thread stripe probe used by the striped adders, modelled on Striped64.HashCode. The probe starts
+ * out random and is rehashed whenever the stripe it selects is found to be contended, so threads that collide on a
+ * stripe spread out instead of contending forever. Probes are shared across all adders because a collision in one is
+ * likely to apply to the others.
+ * <p/>
+ * It also holds the two helpers every striped class in the project shares, {@link #rehash} and {@link #sizeFor}.
+ */
+public final class Probe {
+
+    private static final Random rng = new Random();
+
+    private static final ThreadLocal<Probe> probe = new ThreadLocal<Probe>() {
+        protected Probe initialValue() {
+            return new Probe();
+        }
+    };
+
+    int code;
+
+    private Probe() {
+        final int h = rng.nextInt(); // Avoid zero to allow xorShift rehash
+        code = (h == 0) ? 1 : h;
+    }
+
+    static Probe current() {
+        return probe.get();
+    }
+
+    /**
+     * Marsaglia XorShift, as used by Striped64.retryUpdate.
+     */
+    public static int rehash(int h) {
+        h ^= h << 13;
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+
+    /**
+     * Returns the smallest power of two not less than {@code n}, which is how many stripes the adders keep for
+     * {@code n} processors.
+     */
+    public static int sizeFor(int n) {
+        int size = 1;
+        while (size < n) size <<= 1;
+        return size;
+    }
+}
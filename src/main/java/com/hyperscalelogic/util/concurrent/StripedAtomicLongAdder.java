@@ -24,6 +24,9 @@ import java.util.concurrent.atomic.AtomicLongArray;
  * This work with inspired by trying to emulate the behaviour of the Striped64 class by Doug Lea, but without using
  * the sun.misc.Unsafe class as at the time it was causing issues on the Android platform. To my surprise it performed
  * better across a number of thread configurations. Results available <a href="https://github.com/al3ks/cachestatsmicrobench">here</a>.
+ * <p/>
+ * Stripes are chosen by a per-thread {@link Probe} which is rehashed on a failed CAS, so threads that collide on a
+ * stripe move apart.
  *
  * @author Alex Radeski
  */
@@ -34,9 +37,15 @@ public final class StripedAtomicLongAdder {
     private volatile AtomicLongArray adders = new AtomicLongArray(SIZE);
 
     public final void add(long v) {
-        final long tid = Thread.currentThread().getId();
-        final int sid = (int) (tid ^ (tid >>> 32)) % SIZE;
-        adders.addAndGet(sid, v);
+        final Probe p = Probe.current();
+        int h = p.code;
+        for (; ; ) {
+            final int sid = h & (SIZE - 1);
+            final long cur = adders.get(sid);
+            if (adders.compareAndSet(sid, cur, cur + v)) break;
+            h = Probe.rehash(h);
+        }
+        p.code = h;
     }
 
     public final long sum() {
@@ -46,4 +55,16 @@ public final class StripedAtomicLongAdder {
         }
         return sum;
     }
+
+    /**
+     * Returns the sum and resets it to zero, swapping each stripe to zero atomically so that an add racing with it is
+     * counted either in the value returned or in the next one, never lost.
+     */
+    public final long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += adders.getAndSet(i, 0);
+        }
+        return sum;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.hyperscalelogic.util.concurrent;
+
+import com.google.common.collect.Maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent count-min sketch estimating how often each key was seen, in memory that does not depend on the number
+ * of distinct keys.
+ * <p/>
+ * The sketch is striped like {@link BoundedStripedLongAdder}: each thread increments the rows of the stripe selected
+ * by its identity hash, and estimates sum the stripes before taking the minimum over rows. Increments are atomic
+ * adds, so threads sharing a stripe never lose one and an estimate never falls below the true count before aging;
+ * the stripes keep those adds mostly uncontended. Each stripe halves its counters after every {@code width * 10}
+ * additions, so old traffic ages out and recent heavy hitters dominate.
+ * <p/>
+ * For {@link #top} a fixed-size, direct-mapped table of candidate keys is kept alongside. Every sixteenth increment of
+ * a key offers it for its slot, and it takes the slot over when its estimate in the writer's stripe beats the current
+ * occupant's. Offers are the dearest part of an increment, which is why they are sampled.
+ */
+public final class StripedFrequencySketch<K> {
+
+    private static final int DEPTH = 4;
+
+    private static final int SIZE = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Each stripe is laid out as padding, the additions count, then DEPTH rows of width counters.
+     */
+    private static final int PAD = 16;
+    private static final int ADDITIONS = PAD - 1;
+
+    private static final long OFFER_MASK = 15;
+
+    private final int width;
+    private final int stride;
+    private final long resetAt;
+    private final AtomicLongArray table;
+    private final AtomicReferenceArray<K> candidates;
+
+    /**
+     * Constructs a sketch with rows of 1024 counters and 256 top candidate slots.
+     */
+    public StripedFrequencySketch() {
+        this(1024, 256);
+    }
+
+    /**
+     * @param width      counters per row, rounded up to a power of two, at most 65536
+     * @param candidates candidate slots for {@link #top}, rounded up to a power of two
+     */
+    public StripedFrequencySketch(int width, int candidates) {
+        if (width < 1 || width > 1 << 16) throw new IllegalArgumentException("width must be between 1 and 65536");
+        if (candidates < 1) throw new IllegalArgumentException("candidates must be positive");
+        this.width = Probe.sizeFor(width);
+        this.stride = PAD + DEPTH * this.width;
+        this.resetAt = 10L * this.width;
+        this.table = new AtomicLongArray(SIZE * stride + PAD);
+        this.candidates = new AtomicReferenceArray<K>(Probe.sizeFor(candidates));
+    }
+
+    public final void increment(K key) {
+        final long h = mix(key.hashCode());
+        final int base = (System.identityHashCode(Thread.currentThread()) & (SIZE - 1)) * stride;
+
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            final int idx = base + PAD + i * width + index(h, i);
+            min = Math.min(min, table.incrementAndGet(idx));
+        }
+
+        final long n = table.incrementAndGet(base + ADDITIONS);
+        if (n >= resetAt && table.compareAndSet(base + ADDITIONS, n, 0)) age(base);
+
+        if ((min & OFFER_MASK) == 0) offer(key, h, base, min);
+    }
+
+    /**
+     * Returns the estimated number of times {@code key} was seen, after aging. Never an underestimate before aging.
+     */
+    public final long estimate(K key) {
+        final long h = mix(key.hashCode());
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            final int col = PAD + i * width + index(h, i);
+            long sum = 0;
+            for (int s = 0; s < SIZE; s++) {
+                sum += table.get(s * stride + col);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    /**
+     * Returns up to {@code k} candidate keys with the highest estimates, highest first.
+     */
+    public final List<Map.Entry<K, Long>> top(int k) {
+        final List<Map.Entry<K, Long>> entries = new ArrayList<Map.Entry<K, Long>>();
+        for (int i = 0; i < candidates.length(); i++) {
+            final K key = candidates.get(i);
+            if (key != null) entries.add(Maps.immutableEntry(key, estimate(key)));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<K, Long>>() {
+            @Override
+            public int compare(Map.Entry<K, Long> a, Map.Entry<K, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        return entries.size() > k ? new ArrayList<Map.Entry<K, Long>>(entries.subList(0, k)) : entries;
+    }
+
+    private void offer(K key, long h, int base, long estimate) {
+        final int slot = (int) mix(h) & (candidates.length() - 1);
+        final K cur = candidates.get(slot);
+        if (cur == null) {
+            candidates.compareAndSet(slot, null, key);
+        } else if (cur != key && !cur.equals(key) && localEstimate(cur, base) < estimate) {
+            candidates.compareAndSet(slot, cur, key);
+        }
+    }
+
+    private long localEstimate(K key, int base) {
+        final long h = mix(key.hashCode());
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, table.get(base + PAD + i * width + index(h, i)));
+        }
+        return min;
+    }
+
+    /**
+     * Halves every counter of one stripe. Subtracting rather than storing the halved value keeps increments that race
+     * with the aging.
+     */
+    private void age(int base) {
+        for (int i = base + PAD; i < base + stride; i++) {
+            final long v = table.get(i);
+            if (v > 1) table.addAndGet(i, -(v - (v >>> 1)));
+        }
+    }
+
+    /**
+     * Each row takes the low log2(width) bits of its own 16 bit lane of the hash, so two keys only collide in every row
+     * if they agree on all DEPTH * log2(width) of those bits.
+     */
+    private int index(long h, int row) {
+        return (int) (h >>> (row << 4)) & (width - 1);
+    }
+
+    /**
+     * Mixes every bit of x into every bit of the result. It spreads key hashes, and the candidate slot is taken from a
+     * remix of the spread hash because at the widest rows {@link #index} uses all 64 of its bits, so bits taken from it
+     * directly would also pick a row counter, and keys sharing that counter would share a slot too.
+     */
+    private static long mix(long x) {
+        x *= 0x9E3779B97F4A7C15L;
+        x ^= x >>> 32;
+        x *= 0xD6E8FEB86659FD93L;
+        return x ^ (x >>> 32);
+    }
+}
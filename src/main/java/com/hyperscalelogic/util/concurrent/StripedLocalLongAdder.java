@@ -15,8 +15,8 @@
  */
 package com.hyperscalelogic.util.concurrent;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 
 /**
  * A high performance counter designed to be as non-intrusive as possible. It uses a thread-local
@@ -25,18 +25,32 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * This work with inspired by trying to emulate the behaviour of the Striped64 class by Doug Lea, but without using
  * the sun.misc.Unsafe class as at the time it was causing issues on the Android platform. To my surprise it performed
  * better across a number of thread configurations. Results available <a href="https://github.com/al3ks/cachestatsmicrobench">here</a>.
+ * <p/>
+ * Each stripe weakly references the thread that owns it. Whenever a new thread registers a stripe, the stripes of
+ * threads that have since terminated are folded into a base value and dropped, so the cost of {@link #sum} and the
+ * memory held stay proportional to the live threads rather than to every thread that ever touched the adder.
  *
  * @author Alex Radeski
  */
 public final class StripedLocalLongAdder {
 
-    private final List<LongRef> adders = new CopyOnWriteArrayList<LongRef>();
+    private static final LongRef[] EMPTY = new LongRef[0];
+
+    /**
+     * The base and the stripes are swapped together, so a reader always sees a folded stripe either in the base or in
+     * the array, never both or neither.
+     */
+    private volatile Stripes stripes = new Stripes(0, EMPTY);
+
+    /**
+     * The total at the last {@link #sumThenReset}. Stripes are only ever written by their owners, so they are never
+     * cleared; the sum is the total less what has already been drained.
+     */
+    private volatile long drained = 0;
 
     private final ThreadLocal<LongRef> adder = new ThreadLocal<LongRef>() {
         protected LongRef initialValue() {
-            final LongRef la = new LongRef();
-            adders.add(la);
-            return la;
+            return register(new LongRef(Thread.currentThread()));
         }
     };
 
@@ -44,15 +58,87 @@ public final class StripedLocalLongAdder {
         adder.get().value += v;
     }
 
+    /**
+     * Returns the total less what has been drained. The watermark is read again after the total, and the sum retried
+     * if a {@link #sumThenReset} moved it in between, so values already returned by a drain are never counted again.
+     */
     public final long sum() {
-        long sum = 0;
-        for (int i = 0; i < adders.size(); i++) {
-            sum += adders.get(i).value;
+        for (; ; ) {
+            final long d = drained;
+            final long total = total();
+            if (drained == d) return total - d;
+        }
+    }
+
+    /**
+     * Returns the sum and resets it to zero. The owners' stripes are left alone and the total read here is remembered
+     * instead, so an add racing with it is counted either in the value returned or in the next one, never lost, and
+     * the owners' unsynchronized adds stay uncontended.
+     */
+    public final synchronized long sumThenReset() {
+        final long total = total();
+        final long sum = total - drained;
+        drained = total;
+        return sum;
+    }
+
+    /**
+     * Returns the number of per-thread stripes currently retained.
+     */
+    public final int stripes() {
+        return stripes.adders.length;
+    }
+
+    private long total() {
+        final Stripes s = stripes;
+        long sum = s.base;
+        for (int i = 0; i < s.adders.length; i++) {
+            sum += s.adders[i].value;
         }
         return sum;
     }
 
-    private static final class LongRef {
+    private synchronized LongRef register(LongRef la) {
+        final Stripes s = stripes;
+        long base = s.base;
+        final LongRef[] adders = new LongRef[s.adders.length + 1];
+        int n = 0;
+        for (int i = 0; i < s.adders.length; i++) {
+            final LongRef r = s.adders[i];
+            if (r.isDead()) {
+                base += r.value;
+            } else {
+                adders[n++] = r;
+            }
+        }
+        adders[n++] = la;
+        stripes = new Stripes(base, n == adders.length ? adders : Arrays.copyOf(adders, n));
+        return la;
+    }
+
+    private static final class Stripes {
+        final long base;
+        final LongRef[] adders;
+
+        Stripes(long base, LongRef[] adders) {
+            this.base = base;
+            this.adders = adders;
+        }
+    }
+
+    private static final class LongRef extends WeakReference<Thread> {
         volatile long value = 0;
+
+        LongRef(Thread owner) {
+            super(owner);
+        }
+
+        /**
+         * A terminated thread can no longer write to its stripe, so its value is final.
+         */
+        boolean isDead() {
+            final Thread t = get();
+            return t == null || !t.isAlive();
+        }
     }
-}
\ No newline at end of file
+}
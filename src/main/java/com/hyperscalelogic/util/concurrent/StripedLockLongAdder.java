@@ -15,7 +15,7 @@
  */
 package com.hyperscalelogic.util.concurrent;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A high performance counter designed to be as non-intrusive as possible. It uses striped locks to increase bandwidth.
@@ -23,6 +23,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * This work with inspired by trying to emulate the behaviour of the Striped64 class by Doug Lea, but without using
  * the sun.misc.Unsafe class as at the time it was causing issues on the Android platform. To my surprise it performed
  * better across a number of thread configurations. Results available <a href="https://github.com/al3ks/cachestatsmicrobench">here</a>.
+ * <p/>
+ * Stripes are chosen by a per-thread {@link Probe}. When the stripe's lock is contended the probe is rehashed and the
+ * thread moves to another stripe, so threads that collide spread out.
  *
  * @author Alex Radeski
  */
@@ -31,26 +34,56 @@ public final class StripedLockLongAdder {
     private static final int SIZE = 32;
 
     private final long[] adders = new long[SIZE];
-    private final Object[] locks = new Object[SIZE];
+    private final ReentrantLock[] locks = new ReentrantLock[SIZE];
 
     {
-        for (int i = 0; i < SIZE; i++) locks[i] = new Object();
+        for (int i = 0; i < SIZE; i++) locks[i] = new ReentrantLock();
     }
 
     public final void add(long v) {
-        final long tid = Thread.currentThread().getId();
-        final int sid = (int) (tid ^ (tid >>> 32)) % SIZE;
-        synchronized (locks[sid]) {
+        final Probe p = Probe.current();
+        int sid = p.code & (SIZE - 1);
+        ReentrantLock lock = locks[sid];
+        if (!lock.tryLock()) {
+            p.code = Probe.rehash(p.code);
+            sid = p.code & (SIZE - 1);
+            lock = locks[sid];
+            lock.lock();
+        }
+        try {
             adders[sid] += v;
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Returns the sum and resets it to zero, reading and clearing each stripe under its lock so that an add racing with
+     * it is counted either in the value returned or in the next one, never lost.
+     */
+    public final long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < adders.length; i++) {
+            locks[i].lock();
+            try {
+                sum += adders[i];
+                adders[i] = 0;
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return sum;
+    }
+
     public final long sum() {
         long sum = 0;
         for (int i = 0; i < adders.length; i++) {
             long val = 0;
-            synchronized (locks[i]) {
+            locks[i].lock();
+            try {
                 val = adders[i];
+            } finally {
+                locks[i].unlock();
             }
             sum += val;
         }
@@ -0,0 +1,142 @@
+package com.hyperscalelogic.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative longs with logarithmic buckets, striped across threads like
+ * {@link StripedAtomicLongAdder} so recording a value costs about the same as a striped add and never allocates.
+ * <p/>
+ * Each power of two is split into 8 linear sub-buckets, so a bucket's bounds are within 12.5% of any value in it.
+ * Values below 8 get exact buckets. Stripes are chosen by the per-thread {@link Probe} and there are as many as the
+ * next power of two at or above the number of processors.
+ */
+public final class StripedLogHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets needed to cover every non-negative long.
+     */
+    public static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private static final int SIZE = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Padding between stripes in longs, so two stripes never share a cache line.
+     */
+    private static final int PAD = 16;
+
+    private static final int STRIDE = BUCKETS + PAD;
+
+    private final AtomicLongArray counts = new AtomicLongArray(PAD + SIZE * STRIDE);
+
+    public final void record(long v) {
+        final int b = bucketOf(Math.max(0, v));
+        final Probe p = Probe.current();
+        int h = p.code;
+        for (; ; ) {
+            final int i = PAD + (h & (SIZE - 1)) * STRIDE + b;
+            final long cur = counts.get(i);
+            if (counts.compareAndSet(i, cur, cur + 1)) break;
+            h = Probe.rehash(h);
+        }
+        p.code = h;
+    }
+
+    /**
+     * Sums every stripe into {@code into}, which must have at least {@link #BUCKETS} elements, without allocating.
+     */
+    public final void snapshotInto(long[] into) {
+        for (int b = 0; b < BUCKETS; b++) {
+            long sum = 0;
+            for (int s = 0; s < SIZE; s++) {
+                sum += counts.get(PAD + s * STRIDE + b);
+            }
+            into[b] = sum;
+        }
+    }
+
+    public final Snapshot snapshot() {
+        final long[] into = new long[BUCKETS];
+        snapshotInto(into);
+        return new Snapshot(into);
+    }
+
+    /**
+     * Returns the bucket holding {@code v}.
+     */
+    public static int bucketOf(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        final int exp = 63 - Long.numberOfLeadingZeros(v);
+        final int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    /**
+     * Returns the smallest value held by {@code bucket}.
+     */
+    public static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        final int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        return (long) (SUB_COUNT | (bucket & (SUB_COUNT - 1))) << (exp - SUB_BITS);
+    }
+
+    /**
+     * Returns the largest value held by {@code bucket}.
+     */
+    public static long upperBound(int bucket) {
+        return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * An immutable copy of the bucket counts.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+
+        public Snapshot(long[] counts) {
+            this.counts = counts;
+            long count = 0;
+            for (long c : counts) count += c;
+            this.count = count;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the value at the given percentile (0 to 100), or 0 when
+         * nothing has been recorded.
+         */
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank) return upperBound(b);
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        /**
+         * Returns the upper bound of the highest non-empty bucket, or 0 when nothing has been recorded.
+         */
+        public long max() {
+            for (int b = counts.length - 1; b >= 0; b--) {
+                if (counts[b] != 0) return upperBound(b);
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d p50=%d p90=%d p99=%d p999=%d max=%d",
+                    count, percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.hyperscalelogic.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A running maximum striped like {@link PaddedStripedAtomicLongAdder}, for recording worst cases without Unsafe. An
+ * update only writes when it raises the maximum of the stripe it lands on, so once the maximum settles updates are
+ * plain reads. The maximum is {@link Long#MIN_VALUE} until the first update.
+ */
+public final class StripedLongMaxUpdater {
+
+    private static final int SIZE = Probe.sizeFor(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Stride between stripes in longs, 16 longs being 128 bytes. The array is also offset by one stride so the first
+     * stripe does not share a line with the array header.
+     */
+    private static final int SHIFT = 4;
+
+    private final AtomicLongArray stripes = new AtomicLongArray((SIZE + 2) << SHIFT);
+
+    public StripedLongMaxUpdater() {
+        reset();
+    }
+
+    public final void update(long v) {
+        final Probe p = Probe.current();
+        int h = p.code;
+        for (; ; ) {
+            final int i = ((h & (SIZE - 1)) + 1) << SHIFT;
+            final long cur = stripes.get(i);
+            if (cur >= v || stripes.compareAndSet(i, cur, v)) break;
+            h = Probe.rehash(h);
+        }
+        p.code = h;
+    }
+
+    public final long max() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < SIZE; i++) {
+            max = Math.max(max, stripes.get((i + 1) << SHIFT));
+        }
+        return max;
+    }
+
+    /**
+     * Returns the maximum and resets every stripe, each stripe being swapped atomically so an update is either
+     * included in the returned value or left for the next call.
+     */
+    public final long maxThenReset() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < SIZE; i++) {
+            max = Math.max(max, stripes.getAndSet((i + 1) << SHIFT, Long.MIN_VALUE));
+        }
+        return max;
+    }
+
+    /**
+     * Resets the maximum to {@link Long#MIN_VALUE}. Updates concurrent with the reset may be lost.
+     */
+    public final void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            stripes.set((i + 1) << SHIFT, Long.MIN_VALUE);
+        }
+    }
+}